@@ -0,0 +1,69 @@
+// 7-bag: deals each of the seven pieces once, in shuffled order, before
+// starting a new bag. Droughts are at most 12 pieces long.
+public class BagRandomizer implements Randomizer {
+    private static final int BAG_SIZE = 7;
+
+    private final SeededRandom random;
+    private final Shape.Tetrominoes[] bag = new Shape.Tetrominoes[BAG_SIZE];
+    private int next = BAG_SIZE;
+
+    public BagRandomizer(long seed) {
+        random = new SeededRandom(seed);
+        for (int i = 0; i < BAG_SIZE; i++) {
+            bag[i] = Shape.shapeOf(i + 1);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "bag";
+    }
+
+    @Override
+    public void reset(long seed) {
+        random.setState(seed);
+        for (int i = 0; i < BAG_SIZE; i++) {
+            bag[i] = Shape.shapeOf(i + 1);
+        }
+        next = BAG_SIZE;
+    }
+
+    @Override
+    public long getRandomState() {
+        return random.getState();
+    }
+
+    // Three bits per bag slot, then the index of the next piece
+    @Override
+    public long getPackedState() {
+        long packed = (long) next << (3 * BAG_SIZE);
+        for (int i = 0; i < BAG_SIZE; i++) {
+            packed |= (long) bag[i].ordinal() << (3 * i);
+        }
+        return packed;
+    }
+
+    @Override
+    public void setState(long randomState, long packedState) {
+        random.setState(randomState);
+        for (int i = 0; i < BAG_SIZE; i++) {
+            bag[i] = Shape.shapeOf((int) (packedState >>> (3 * i)) & 7);
+        }
+        next = (int) (packedState >>> (3 * BAG_SIZE)) & 7;
+    }
+
+    @Override
+    public Shape.Tetrominoes next() {
+        if (next == BAG_SIZE) {
+            // Fisher-Yates shuffle in place
+            for (int i = BAG_SIZE - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                Shape.Tetrominoes tmp = bag[i];
+                bag[i] = bag[j];
+                bag[j] = tmp;
+            }
+            next = 0;
+        }
+        return bag[next++];
+    }
+}
@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+
+// Plays many independent headless games across all cores. Each worker owns one
+// GameEngine and one Player and claims game indices from a shared counter;
+// game i always gets the same seed, so every configuration faces the same piece
+// sequences regardless of thread count or scheduling.
+//
+// Usage: java BatchRunner [--games N] [--seed S] [--threads T] [--max-pieces M]
+//                        [--player random|search] [--randomizer weighted|bag|history]
+//                        [--scores file] [--width W] [--height H] [--metrics]
+//                        [--cache-log2 N] [--telemetry file]
+public class BatchRunner {
+    public static final int DEFAULT_MAX_PIECES = 10_000;
+
+    private final int games;
+    private final long baseSeed;
+    private final int threads;
+    private final int maxPieces;
+    private final LongFunction<Player> players;
+    private final String randomizer;
+    private ScoreStore scoreStore;
+    private TelemetryRecorder telemetry;
+    private int width = GameEngine.BOARD_WIDTH;
+    private int height = GameEngine.BOARD_HEIGHT;
+
+    public BatchRunner(int games, long baseSeed, int threads, int maxPieces, LongFunction<Player> players) {
+        this(games, baseSeed, threads, maxPieces, players, "weighted");
+    }
+
+    public BatchRunner(int games, long baseSeed, int threads, int maxPieces, LongFunction<Player> players,
+                       String randomizer) {
+        this.games = games;
+        this.baseSeed = baseSeed;
+        this.threads = threads;
+        this.maxPieces = maxPieces;
+        this.players = players;
+        this.randomizer = randomizer;
+    }
+
+    // Appends every finished game to store as well
+    public void setScoreStore(ScoreStore store) {
+        this.scoreStore = store;
+    }
+
+    // Records every game's per-piece events to recorder as well
+    public void setTelemetry(TelemetryRecorder recorder) {
+        this.telemetry = recorder;
+    }
+
+    public void setBoardSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    // Seed of the index-th game in a batch
+    public static long gameSeed(long baseSeed, int index) {
+        return baseSeed + index * 0x9E3779B97F4A7C15L;
+    }
+
+    public BatchSummary run() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger nextGame = new AtomicInteger();
+        List<Future<BatchSummary>> workers = new ArrayList<>();
+        try {
+            for (int w = 0; w < threads; w++) {
+                Player player = players.apply(gameSeed(~baseSeed, w));
+                workers.add(pool.submit(() -> runWorker(player, nextGame)));
+            }
+
+            BatchSummary summary = new BatchSummary();
+            for (Future<BatchSummary> worker : workers) {
+                summary.combine(worker.get());
+            }
+            return summary;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Game worker failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private BatchSummary runWorker(Player player, AtomicInteger nextGame) {
+        GameEngine engine = new GameEngine(baseSeed, Randomizer.named(randomizer, baseSeed), width, height);
+        List<GameInput> inputs = new ArrayList<>();
+        BatchSummary summary = new BatchSummary();
+        TelemetryRecorder.Stream stream = telemetry == null ? null : telemetry.newStream();
+        engine.setTelemetry(stream);
+
+        int index;
+        while ((index = nextGame.getAndIncrement()) < games) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            long start = System.currentTimeMillis();
+            summary.add(playGame(engine, player, gameSeed(baseSeed, index), maxPieces, inputs));
+            if (scoreStore != null) {
+                long end = System.currentTimeMillis();
+                scoreStore.append(engine, end, end - start);
+            }
+        }
+        if (stream != null) {
+            stream.flush();
+        }
+        return summary;
+    }
+
+    // Plays one game to the end, or until maxPieces have locked.
+    public static GameResult playGame(GameEngine engine, Player player, long seed, int maxPieces,
+                                      List<GameInput> inputs) {
+        engine.start(0, seed);
+        while (!engine.isGameOver() && engine.getPiecesPlaced() < maxPieces) {
+            int placed = engine.getPiecesPlaced();
+            inputs.clear();
+            player.plan(engine, inputs);
+            for (int i = 0; i < inputs.size(); i++) {
+                engine.apply(inputs.get(i), 0);
+            }
+            // A plan that leaves the piece floating would stall the game
+            if (engine.getPiecesPlaced() == placed && !engine.isGameOver()) {
+                engine.apply(GameInput.HARD_DROP, 0);
+            }
+        }
+        return new GameResult(seed, engine.getScore(), engine.getLinesCleared(),
+                engine.getLevel(), engine.getPiecesPlaced());
+    }
+
+    static LongFunction<Player> playerFactory(String name) {
+        return playerFactory(name, null);
+    }
+
+    // Search players all share cache, when it is not null
+    static LongFunction<Player> playerFactory(String name, EvaluationCache cache) {
+        return switch (name) {
+            case "random" -> RandomPlayer::new;
+            case "search" -> seed -> new SearchPlayer(new Evaluator(), SearchPlayer.DEFAULT_DEPTH,
+                    SearchPlayer.DEFAULT_TABLE_SIZE_LOG2, cache);
+            default -> throw new IllegalArgumentException("Unknown player: " + name);
+        };
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        int games = 1000;
+        long seed = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxPieces = DEFAULT_MAX_PIECES;
+        String player = "random";
+        String randomizer = "weighted";
+        String scores = null;
+        int width = GameEngine.BOARD_WIDTH;
+        int height = GameEngine.BOARD_HEIGHT;
+        boolean metrics = false;
+        int cacheLog2 = 0;
+        String telemetry = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games" -> games = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--max-pieces" -> maxPieces = Integer.parseInt(args[++i]);
+                case "--player" -> player = args[++i];
+                case "--randomizer" -> randomizer = args[++i];
+                case "--scores" -> scores = args[++i];
+                case "--width" -> width = Integer.parseInt(args[++i]);
+                case "--height" -> height = Integer.parseInt(args[++i]);
+                case "--metrics" -> metrics = true;
+                case "--cache-log2" -> cacheLog2 = Integer.parseInt(args[++i]);
+                case "--telemetry" -> telemetry = args[++i];
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        EvaluationCache cache = cacheLog2 > 0 ? new EvaluationCache(cacheLog2) : null;
+        BatchRunner runner = new BatchRunner(games, seed, threads, maxPieces, playerFactory(player, cache),
+                randomizer);
+        ScoreStore store = scores == null ? null : new ScoreStore(Path.of(scores));
+        runner.setScoreStore(store);
+        runner.setBoardSize(width, height);
+        TelemetryRecorder recorder = telemetry == null ? null : new TelemetryRecorder(Path.of(telemetry));
+        runner.setTelemetry(recorder);
+
+        long start = System.nanoTime();
+        BatchSummary summary = runner.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (store != null) {
+            store.close();
+        }
+        if (recorder != null) {
+            recorder.close();
+        }
+
+        System.out.print(summary);
+        System.out.printf("%.2f s, %.0f games/s on %d threads%n", seconds, games / seconds, threads);
+        if (cache != null) {
+            System.out.println("Evaluation cache: " + cache);
+        }
+        if (recorder != null) {
+            System.out.printf("Telemetry: %d bytes written, %d events dropped%n", recorder.getWrittenBytes(),
+                    recorder.getDroppedEvents());
+        }
+        if (metrics) {
+            System.out.print(MetricsRegistry.getDefault().dump());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.LongSummaryStatistics;
+
+// Aggregated results of many games. Each worker fills its own summary and the
+// runner merges them at the end, so recording a game never contends.
+public class BatchSummary {
+    private final LongSummaryStatistics score = new LongSummaryStatistics();
+    private final LongSummaryStatistics lines = new LongSummaryStatistics();
+    private final LongSummaryStatistics level = new LongSummaryStatistics();
+    private final LongSummaryStatistics pieces = new LongSummaryStatistics();
+
+    public void add(GameResult result) {
+        score.accept(result.score());
+        lines.accept(result.lines());
+        level.accept(result.level());
+        pieces.accept(result.pieces());
+    }
+
+    public void combine(BatchSummary other) {
+        score.combine(other.score);
+        lines.combine(other.lines);
+        level.combine(other.level);
+        pieces.combine(other.pieces);
+    }
+
+    public long getGames() {
+        return score.getCount();
+    }
+
+    public LongSummaryStatistics getScore() {
+        return score;
+    }
+
+    public LongSummaryStatistics getLines() {
+        return lines;
+    }
+
+    public LongSummaryStatistics getLevel() {
+        return level;
+    }
+
+    public LongSummaryStatistics getPieces() {
+        return pieces;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("games: %d%n", getGames()));
+        sb.append(String.format("%-7s %12s %12s %12s%n", "", "mean", "min", "max"));
+        appendRow(sb, "score", score);
+        appendRow(sb, "lines", lines);
+        appendRow(sb, "level", level);
+        appendRow(sb, "pieces", pieces);
+        return sb.toString();
+    }
+
+    private static void appendRow(StringBuilder sb, String name, LongSummaryStatistics stats) {
+        sb.append(String.format("%-7s %12.1f %12d %12d%n", name, stats.getAverage(),
+                stats.getCount() == 0 ? 0 : stats.getMin(), stats.getCount() == 0 ? 0 : stats.getMax()));
+    }
+}
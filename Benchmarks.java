@@ -0,0 +1,366 @@
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+// Micro-benchmarks for the hot paths: collision checks, ghost lookup, line
+// clearing, rotation, piece generation and painting a whole frame.
+//
+// Usage: java Benchmarks [--filter text] [--forks N] [--warmup N] [--iterations N] [--time-ms T]
+//
+// Each benchmark runs in its own JVM, like a JMH fork, so the JIT profile of
+// one cannot slow down another. It is warmed up and then timed over several
+// fixed-length iterations. Besides ns/op it reports the bytes allocated per
+// op, read from the JVM's per-thread allocation counter, so a change that
+// adds garbage to a hot path shows up. Boards come from real SearchPlayer
+// games rather than hand-made patterns.
+public class Benchmarks {
+    private static final int DEFAULT_FORKS = 1;
+    private static final int DEFAULT_WARMUP = 5;
+    private static final int DEFAULT_ITERATIONS = 5;
+    private static final int DEFAULT_TIME_MS = 500;
+    // Ops run between clock reads
+    private static final int BATCH = 256;
+    private static final int FIXTURE_GAMES = 32;
+    private static final int FIXTURE_PIECES = 120;
+    private static final int FIXTURES_PER_CASE = 16;
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Results are folded in here so the JIT cannot drop the work
+    private static long sink;
+
+    private final Map<String, LongSupplier> benchmarks = new LinkedHashMap<>();
+    private final List<Playfield> boards = new ArrayList<>();
+    private final List<Shape> boardPieces = new ArrayList<>();
+    private final List<GameEngine> engines = new ArrayList<>();
+    private final Playfield scratch = new Playfield(GameEngine.BOARD_WIDTH, GameEngine.BOARD_HEIGHT);
+    private int next;
+
+    private Benchmarks() {
+        playFixtureGames();
+        register();
+    }
+
+    private void register() {
+        Probe[] probes = collisionProbes();
+        benchmarks.put("canMoveTo", () -> {
+            Probe p = probes[next++ & (probes.length - 1)];
+            return p.field.canPlace(p.piece, p.x, p.y) ? 1 : 0;
+        });
+
+        GameEngine[] live = engines.toArray(new GameEngine[0]);
+        benchmarks.put("findGhostPieceY", () -> live[next++ % live.length].findGhostPieceY());
+
+        Playfield[] copyOnly = clearFixtures(0);
+        benchmarks.put("copyFrom (clear baseline)", () -> {
+            scratch.copyFrom(copyOnly[next++ & (copyOnly.length - 1)]);
+            return scratch.getRow(0);
+        });
+        for (int lines = 0; lines <= 4; lines++) {
+            Playfield[] fixtures = clearFixtures(lines);
+            benchmarks.put("clearFullLines " + lines, () -> {
+                scratch.copyFrom(fixtures[next++ & (fixtures.length - 1)]);
+                return scratch.clearFullLines();
+            });
+        }
+
+        GameState[] states = new GameState[live.length];
+        for (int i = 0; i < live.length; i++) {
+            states[i] = live[i].snapshot();
+        }
+        GameEngine forked = new GameEngine(1, new WeightedRandomizer(1));
+        GameState saved = new GameState(GameEngine.BOARD_WIDTH, GameEngine.BOARD_HEIGHT);
+        benchmarks.put("saveState", () -> {
+            live[next++ % live.length].saveState(saved);
+            return saved.getScore();
+        });
+        benchmarks.put("restoreState", () -> {
+            forked.restoreState(states[next++ % states.length]);
+            return forked.getCurrentY();
+        });
+
+        benchmarks.put("positionHash", () -> live[next++ % live.length].getPositionHash());
+        benchmarks.put("Zobrist.hash (full scan)", () -> Zobrist.hash(live[next++ % live.length].getPlayfield()));
+        EvaluationCache cache = new EvaluationCache(16);
+        for (GameEngine engine : live) {
+            cache.put(engine.getPositionHash(), engine.getScore());
+        }
+        benchmarks.put("evaluationCache get", () -> (long) cache.get(live[next++ % live.length].getPositionHash()));
+
+        Shape[] all = allOrientations();
+        benchmarks.put("rotateLeft", () -> all[next++ & (all.length - 1)].rotateLeft().getRotation());
+        benchmarks.put("rotateRight", () -> all[next++ & (all.length - 1)].rotateRight().getRotation());
+
+        for (String name : new String[]{"weighted", "bag", "history"}) {
+            Randomizer randomizer = Randomizer.named(name, 1);
+            benchmarks.put("randomizer " + name, () -> randomizer.next().ordinal());
+        }
+        PieceQueue queue = new PieceQueue(new WeightedRandomizer(1));
+        benchmarks.put("nextPiece", () -> queue.poll().getRotation() + queue.peek(2).getRotation());
+
+        BoardRenderer renderer = new BoardRenderer();
+        java.awt.Dimension size = renderer.getPreferredSize();
+        BufferedImage frame = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
+        GameEngine shown = live[live.length / 2];
+        benchmarks.put("paint", () -> {
+            Graphics g = frame.getGraphics();
+            renderer.paint(g, shown, size.width, size.height, false);
+            g.dispose();
+            return frame.getRGB(size.width / 2, size.height / 2);
+        });
+        // Bumping the stack version forces the cached stack image to be
+        // redrawn, as happens after every lock or line clear
+        benchmarks.put("paint (stack changed)", () -> {
+            GameEngine engine = live[next++ % live.length];
+            engine.getPlayfield().copyFrom(engine.getPlayfield());
+            Graphics g = frame.getGraphics();
+            renderer.paint(g, engine, size.width, size.height, false);
+            g.dispose();
+            return frame.getRGB(size.width / 2, size.height / 2);
+        });
+        // The same frame scaled up to fill a 4K screen, blitted from sprites
+        // rendered at the larger block size
+        BoardRenderer scaledRenderer = new BoardRenderer();
+        BufferedImage scaledFrame = new BufferedImage(3840, 2160, BufferedImage.TYPE_INT_RGB);
+        benchmarks.put("paint (4K)", () -> {
+            Graphics g = scaledFrame.getGraphics();
+            scaledRenderer.paint(g, shown, scaledFrame.getWidth(), scaledFrame.getHeight(), false);
+            g.dispose();
+            return scaledFrame.getRGB(scaledFrame.getWidth() / 2, scaledFrame.getHeight() / 2);
+        });
+        // What Board repaints when the piece moves: just the cells it covers
+        java.awt.Rectangle pieceArea = scaledRenderer.cellBounds(shown.getCurrentX() + shown.getCurrentPiece().minX(),
+                shown.getCurrentY() - shown.getCurrentPiece().minY(), shown.getCurrentPiece().width(),
+                shown.getCurrentPiece().height(), scaledFrame.getWidth(), scaledFrame.getHeight(),
+                new java.awt.Rectangle());
+        benchmarks.put("paint (4K, piece area)", () -> {
+            Graphics g = scaledFrame.getGraphics();
+            g.setClip(pieceArea);
+            scaledRenderer.paint(g, shown, scaledFrame.getWidth(), scaledFrame.getHeight(), false);
+            g.dispose();
+            return scaledFrame.getRGB(pieceArea.x, pieceArea.y);
+        });
+    }
+
+    // Plays a few bot games and keeps every intermediate board, plus the
+    // engines themselves paused mid-game with a freshly spawned piece.
+    private void playFixtureGames() {
+        SearchPlayer player = new SearchPlayer();
+        List<GameInput> inputs = new ArrayList<>();
+        for (int game = 0; game < FIXTURE_GAMES; game++) {
+            GameEngine engine = new GameEngine(game);
+            engine.start(0, BatchRunner.gameSeed(1, game));
+            int pieces = FIXTURE_PIECES / 2 + game * FIXTURE_PIECES / FIXTURE_GAMES;
+            while (!engine.isGameOver() && engine.getPiecesPlaced() < pieces) {
+                Playfield copy = new Playfield(GameEngine.BOARD_WIDTH, GameEngine.BOARD_HEIGHT);
+                copy.copyFrom(engine.getPlayfield());
+                boards.add(copy);
+                boardPieces.add(engine.getCurrentPiece());
+
+                inputs.clear();
+                player.plan(engine, inputs);
+                for (GameInput input : inputs) {
+                    engine.apply(input, 0);
+                }
+            }
+            if (!engine.isGameOver()) {
+                engines.add(engine);
+            }
+        }
+    }
+
+    private record Probe(Playfield field, Shape piece, int x, int y) {
+    }
+
+    // Mix of hits and misses: every orientation at every column, at heights
+    // from the spawn row down into the stack.
+    private Probe[] collisionProbes() {
+        List<Probe> probes = new ArrayList<>();
+        Shape[] all = allOrientations();
+        for (int i = 0; probes.size() < 4096; i++) {
+            Playfield field = boards.get(i % boards.size());
+            Shape piece = all[i % all.length];
+            int x = i % GameEngine.BOARD_WIDTH;
+            int y = GameEngine.BOARD_HEIGHT - 1 - (i / 7) % GameEngine.BOARD_HEIGHT;
+            probes.add(new Probe(field, piece, x, y));
+        }
+        return probes.toArray(new Probe[0]);
+    }
+
+    // Boards just after a lock that completes exactly `lines` rows, found by
+    // trying every hard drop of the piece the game was actually holding.
+    private Playfield[] clearFixtures(int lines) {
+        List<Playfield> found = new ArrayList<>();
+        Playfield candidate = new Playfield(GameEngine.BOARD_WIDTH, GameEngine.BOARD_HEIGHT);
+        for (int i = 0; i < boards.size() && found.size() < FIXTURES_PER_CASE; i++) {
+            Playfield board = boards.get(i);
+            Shape piece = boardPieces.get(i);
+            for (int r = 0; r < Shape.NUM_ROTATIONS && found.size() < FIXTURES_PER_CASE; r++, piece = piece.rotateLeft()) {
+                for (int x = 0; x < GameEngine.BOARD_WIDTH && found.size() < FIXTURES_PER_CASE; x++) {
+                    int y = GameEngine.BOARD_HEIGHT - 1 + piece.minY();
+                    if (!board.canPlace(piece, x, y)) {
+                        continue;
+                    }
+                    while (board.canPlace(piece, x, y - 1)) {
+                        y--;
+                    }
+                    candidate.copyFrom(board);
+                    candidate.lock(piece, x, y);
+                    if (fullRows(candidate) == lines) {
+                        found.add(candidate);
+                        candidate = new Playfield(GameEngine.BOARD_WIDTH, GameEngine.BOARD_HEIGHT);
+                    }
+                }
+            }
+        }
+        if (found.isEmpty()) {
+            throw new IllegalStateException("No fixture clears " + lines + " lines");
+        }
+        // Repeat up to a power of two so benchmarks can index with a mask
+        Playfield[] fixtures = new Playfield[FIXTURES_PER_CASE];
+        for (int i = 0; i < fixtures.length; i++) {
+            fixtures[i] = found.get(i % found.size());
+        }
+        return fixtures;
+    }
+
+    private static int fullRows(Playfield field) {
+        int full = 0;
+        for (int y = 0; y < field.getHeight(); y++) {
+            if (Long.bitCount(field.getRow(y)) == field.getWidth()) {
+                full++;
+            }
+        }
+        return full;
+    }
+
+    private static Shape[] allOrientations() {
+        Shape[] all = new Shape[32];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = Shape.of(Shape.shapeOf(1 + i % 7), i / 8 % Shape.NUM_ROTATIONS);
+        }
+        return all;
+    }
+
+    private record Result(double nanosPerOp, double error, double bytesPerOp) {
+    }
+
+    private static Result measure(LongSupplier op, int warmup, int iterations, long nanos) {
+        for (int i = 0; i < warmup; i++) {
+            iteration(op, nanos);
+        }
+
+        double[] times = new double[iterations];
+        double bytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            long allocated = threads.getCurrentThreadAllocatedBytes();
+            long[] ops = new long[1];
+            times[i] = iteration(op, nanos, ops);
+            bytes += (double) (threads.getCurrentThreadAllocatedBytes() - allocated) / ops[0];
+        }
+
+        double mean = 0;
+        for (double t : times) {
+            mean += t / iterations;
+        }
+        double variance = 0;
+        for (double t : times) {
+            variance += (t - mean) * (t - mean) / Math.max(1, iterations - 1);
+        }
+        return new Result(mean, Math.sqrt(variance), bytes / iterations);
+    }
+
+    private static double iteration(LongSupplier op, long nanos) {
+        return iteration(op, nanos, new long[1]);
+    }
+
+    // Runs op in batches for about nanos and returns the mean ns/op; the op
+    // count is returned through ops so the loop itself allocates nothing.
+    private static double iteration(LongSupplier op, long nanos, long[] ops) {
+        long count = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < BATCH; i++) {
+                sink += op.getAsLong();
+            }
+            count += BATCH;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < nanos);
+        ops[0] = count;
+        return (double) elapsed / count;
+    }
+
+    // Runs one benchmark in a fresh JVM and returns its result line
+    private static String fork(String name, int warmup, int iterations, int timeMs)
+            throws IOException, InterruptedException {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        Process process = new ProcessBuilder(java, "-Djava.awt.headless=true",
+                "-cp", System.getProperty("java.class.path"), "Benchmarks",
+                "--run", name, "--warmup", String.valueOf(warmup),
+                "--iterations", String.valueOf(iterations), "--time-ms", String.valueOf(timeMs))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes()).trim();
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("Benchmark " + name + " failed");
+        }
+        return output;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String filter = "";
+        String run = null;
+        int forks = DEFAULT_FORKS;
+        int warmup = DEFAULT_WARMUP;
+        int iterations = DEFAULT_ITERATIONS;
+        int timeMs = DEFAULT_TIME_MS;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--filter" -> filter = args[++i];
+                case "--run" -> run = args[++i];
+                case "--forks" -> forks = Integer.parseInt(args[++i]);
+                case "--warmup" -> warmup = Integer.parseInt(args[++i]);
+                case "--iterations" -> iterations = Integer.parseInt(args[++i]);
+                case "--time-ms" -> timeMs = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        Benchmarks suite = new Benchmarks();
+        if (run != null) {
+            LongSupplier op = suite.benchmarks.get(run);
+            if (op == null) {
+                throw new IllegalArgumentException("Unknown benchmark: " + run);
+            }
+            Result result = measure(op, warmup, iterations, timeMs * 1_000_000L);
+            System.out.printf("%-28s %10.2f +- %6.2f ns/op %10.1f B/op%n",
+                    run, result.nanosPerOp(), result.error(), result.bytesPerOp());
+            if (sink == 42) {
+                System.out.println();
+            }
+            return;
+        }
+
+        for (String name : suite.benchmarks.keySet()) {
+            if (!name.contains(filter)) {
+                continue;
+            }
+            for (int f = 0; f < forks; f++) {
+                if (forks == 1) {
+                    System.out.println(fork(name, warmup, iterations, timeMs));
+                } else {
+                    System.out.println(fork(name, warmup, iterations, timeMs) + "  (fork " + (f + 1) + ")");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Pre-rendered block images for one block size. Each tetromino color's bevel
+// and ghost is drawn once up front into a single atlas image, so painting a
+// cell is one drawImage call from it and allocates nothing.
+public class BlockSprites {
+    static final Color[] COLORS = {
+        new Color(0, 0, 0), new Color(204, 102, 102),
+        new Color(102, 204, 102), new Color(102, 102, 204),
+        new Color(204, 204, 102), new Color(204, 102, 204),
+        new Color(102, 204, 204), new Color(218, 170, 0),
+        new Color(128, 128, 128) // Garbage
+    };
+    static final Color[] BRIGHT_COLORS = new Color[COLORS.length];
+    static final Color[] DARK_COLORS = new Color[COLORS.length];
+    static final Color[] GHOST_COLORS = new Color[COLORS.length];
+
+    static {
+        for (int i = 0; i < COLORS.length; i++) {
+            Color color = COLORS[i];
+            BRIGHT_COLORS[i] = color.brighter();
+            DARK_COLORS[i] = color.darker();
+            GHOST_COLORS[i] = new Color(color.getRed(), color.getGreen(), color.getBlue(), 50); // Make it translucent
+        }
+    }
+
+    // Atlases kept around per block size, so flipping between a few window
+    // sizes does not re-render them
+    private static final int CACHED_SIZES = 4;
+    private static final Map<Integer, BlockSprites> BY_SIZE = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, BlockSprites> eldest) {
+            return size() > CACHED_SIZES;
+        }
+    };
+
+    private final int blockSize;
+    // One row of tiles: every block color, then every ghost color
+    private final BufferedImage atlas;
+
+    public BlockSprites(int blockSize) {
+        this.blockSize = blockSize;
+        atlas = createImage(blockSize * COLORS.length * 2, blockSize, Transparency.TRANSLUCENT);
+        Graphics g = atlas.getGraphics();
+        for (int i = 0; i < COLORS.length; i++) {
+            renderBlock(g, i * blockSize, i);
+            renderGhost(g, (COLORS.length + i) * blockSize, i);
+        }
+        g.dispose();
+    }
+
+    // Shared sprites for a block size, rendered the first time it is asked for
+    public static synchronized BlockSprites forSize(int blockSize) {
+        return BY_SIZE.computeIfAbsent(blockSize, BlockSprites::new);
+    }
+
+    // Image in the screen's native format when there is a screen, so blits
+    // from it can stay in video memory
+    static BufferedImage createImage(int width, int height, int transparency) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                    .getDefaultScreenDevice().getDefaultConfiguration();
+            return config.createCompatibleImage(width, height, transparency);
+        }
+        return new BufferedImage(width, height, transparency == Transparency.OPAQUE
+                ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public void drawBlock(Graphics g, int x, int y, Shape.Tetrominoes shape) {
+        drawTile(g, x, y, shape.ordinal());
+    }
+
+    // Draws a Playfield cell value: a piece color or garbage
+    public void drawCell(Graphics g, int x, int y, int cell) {
+        drawTile(g, x, y, cell);
+    }
+
+    public void drawGhost(Graphics g, int x, int y, Shape.Tetrominoes shape) {
+        drawTile(g, x, y, COLORS.length + shape.ordinal());
+    }
+
+    private void drawTile(Graphics g, int x, int y, int tile) {
+        int left = tile * blockSize;
+        g.drawImage(atlas, x, y, x + blockSize, y + blockSize, left, 0, left + blockSize, blockSize, null);
+    }
+
+    // The bevel is one pixel at the default block size and thickens with it
+    private void renderBlock(Graphics g, int left, int index) {
+        int bevel = Math.max(1, blockSize / BoardRenderer.DEFAULT_BLOCK_SIZE);
+
+        g.setColor(COLORS[index]);
+        g.fillRect(left + bevel, bevel, blockSize - 2 * bevel, blockSize - 2 * bevel);
+
+        for (int i = 0; i < bevel; i++) {
+            int right = left + blockSize - 1 - i;
+            int bottom = blockSize - 1 - i;
+
+            g.setColor(BRIGHT_COLORS[index]);
+            g.drawLine(left + i, bottom, left + i, i);
+            g.drawLine(left + i, i, right, i);
+
+            g.setColor(DARK_COLORS[index]);
+            g.drawLine(left + i + 1, bottom, right, bottom);
+            g.drawLine(right, bottom, right, i + 1);
+        }
+    }
+
+    private void renderGhost(Graphics g, int left, int index) {
+        int bevel = Math.max(1, blockSize / BoardRenderer.DEFAULT_BLOCK_SIZE);
+        g.setColor(GHOST_COLORS[index]);
+        g.fillRect(left + bevel, bevel, blockSize - 2 * bevel, blockSize - 2 * bevel);
+    }
+}
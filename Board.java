@@ -1,468 +1,421 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Board extends JPanel {
-    private static final int BOARD_WIDTH = 10;
-    private static final int BOARD_HEIGHT = 20;
-    private static final int BLOCK_SIZE = 20;
-    private static final int SIDE_PANEL_WIDTH = 100;
-    private static final int NUM_NEXT_PIECES = 3;
-    private static final int PREVIEW_BLOCK_SIZE = 15;
-    private static final int PREVIEW_SPACING = 60;
-    private static final int NORMAL_FALL_SPEED = 400;
+    private static final int NUM_NEXT_PIECES = BoardRenderer.NUM_NEXT_PIECES;
     private static final int SOFT_DROP_SPEED = 50;
-    private static final int LOCK_DELAY = 1000; // 2.5 seconds in milliseconds
-    private static final int LINES_PER_LEVEL = 10;
-
+    private static final int BOT_INPUT_DELAY = 60;
+    private static final int REPLAY_FRAME_DELAY = 16;
+    private static final int INPUT_QUEUE_CAPACITY = 64;
+    private static final MetricsRegistry.Counter GAME_CYCLES = MetricsRegistry.getDefault()
+            .counter("tetris_game_cycles_total", "Gravity ticks run");
+
+    private final GameEngine engine;
+    private final BoardRenderer renderer;
+    private final Rectangle dirty = new Rectangle();
     private Timer timer;
-    private boolean isFallingFinished = false;
-    private boolean isStarted = false;
     private boolean isPaused = false;
-    private boolean isGameOver = false;
-    private int numLinesRemoved = 0;
-    private int currentX = 0;
-    private int currentY = 0;
-    private Shape currentPiece;
-    private Shape holdPiece;
-    private boolean canHold = true;
-    private Shape[] nextPieces;
-    private int[][] board;
-    private long lastMoveDownTime;
-    private boolean isAtBottom = false;
-    private int score = 0;
-    private int level = 1;
-    private int linesCleared = 0;
+    private boolean isDownPressed = false;
+
+    // Keyboard and bot inputs, applied in order with their latency measured
+    private final InputQueue inputs = new InputQueue(INPUT_QUEUE_CAPACITY);
+    private final InputQueue.Handler applyInput = this::applyInput;
+    private final LatencyMetrics inputLatency = new LatencyMetrics();
+
+    // Bot driving the board through the same inputs as the keyboard, if any
+    private Player player;
+    private final Timer botTimer = new Timer(BOT_INPUT_DELAY, e -> doBotStep());
+    private final List<GameInput> botInputs = new ArrayList<>();
+    private int nextBotInput = 0;
+    private int botPlannedAt = -1;
+    // Set when a bot played any part of the current game, which keeps the
+    // game off the leaderboard
+    private boolean botPlayed;
+
+    // Each game is recorded to a new file here when set
+    private Path recordingDirectory;
+    private ReplayRecorder recorder;
+
+    // Finished games are appended here when set
+    private ScoreStore scoreStore;
+    private long gameStartedAt;
+
+    // Replay shown instead of a live game, if any
+    private ReplayPlayer replay;
+    private boolean fastReplay;
+    private long replayStartedAt;
+    private final Timer replayTimer = new Timer(REPLAY_FRAME_DELAY, e -> doReplayStep());
+
+    // Versus client whose mirror of one board is shown instead of a live game, if any
+    private VersusClient remote;
+    private int remoteSide;
+
+    // What the last repaint request covered, used to find dirty regions
+    private Shape shownPiece;
+    private int shownX;
+    private int shownY;
+    private int shownGhostY;
+    private int shownStackVersion = -1;
+    private int shownStackHeight;
+    private Shape shownHold;
+    private final Shape[] shownNext = new Shape[NUM_NEXT_PIECES];
+    private int shownScore = -1;
+    private int shownLevel = -1;
+    private int shownLines = -1;
 
     public Board() {
+        this(new GameEngine());
+    }
+
+    public Board(GameEngine engine) {
+        this(engine, BoardRenderer.DEFAULT_BLOCK_SIZE);
+    }
+
+    public Board(GameEngine engine, int blockSize) {
         setFocusable(true);
-        setPreferredSize(new Dimension(BOARD_WIDTH * BLOCK_SIZE + SIDE_PANEL_WIDTH * 2, BOARD_HEIGHT * BLOCK_SIZE));
-        currentPiece = new Shape();
-        timer = new Timer(NORMAL_FALL_SPEED, new GameCycle());
-        board = new int[BOARD_WIDTH][BOARD_HEIGHT];
-        nextPieces = new Shape[NUM_NEXT_PIECES];
+        this.engine = engine;
+        renderer = new BoardRenderer(engine.getWidth(), engine.getHeight(), blockSize);
+        setPreferredSize(renderer.getPreferredSize());
+        // Moving to a screen with a different scale re-renders the sprites
+        addPropertyChangeListener("graphicsConfiguration", e -> updateDeviceScale());
+        timer = new Timer(GameEngine.NORMAL_FALL_SPEED, new GameCycle());
         addKeyListener(new TAdapter());
-        initBoard();
-        initNextPieces();
     }
 
-    private void initBoard() {
-        for (int i = 0; i < BOARD_WIDTH; i++) {
-            for (int j = 0; j < BOARD_HEIGHT; j++) {
-                board[i][j] = 0;
-            }
-        }
+    public GameEngine getEngine() {
+        return engine;
     }
 
-    private void initNextPieces() {
-        for (int i = 0; i < NUM_NEXT_PIECES; i++) {
-            nextPieces[i] = new Shape();
-            nextPieces[i].setRandomShape();
-        }
+    // Time from a key press or bot move to the engine applying it
+    public LatencyMetrics getInputLatency() {
+        return inputLatency;
     }
 
     @Override
-    public void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        doDrawing(g);
+    public void addNotify() {
+        super.addNotify();
+        updateDeviceScale();
     }
 
-    private void doDrawing(Graphics g) {
-        Dimension size = getSize();
-        int boardTop = (int) size.getHeight() - BOARD_HEIGHT * BLOCK_SIZE;
+    private void updateDeviceScale() {
+        renderer.setDeviceScale(BoardRenderer.deviceScale(getGraphicsConfiguration()));
+    }
 
-        // Draw side panels background
-        g.setColor(new Color(40, 40, 40));
-        g.fillRect(0, 0, SIDE_PANEL_WIDTH, size.height); // Left panel
-        g.fillRect(BOARD_WIDTH * BLOCK_SIZE + SIDE_PANEL_WIDTH, 0, SIDE_PANEL_WIDTH, size.height); // Right panel
+    @Override
+    public void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        renderer.paint(g, engine, getWidth(), getHeight(), isPaused);
+    }
 
-        // Draw hold piece
-        g.setColor(Color.WHITE);
-        g.drawString("HOLD", 20, 30);
-        if (holdPiece != null) {
-            drawPreviewPiece(g, holdPiece, 25, 50);
+    // Compares the engine against what was last painted and repaints only the
+    // regions that differ: the old and new piece and ghost cells, the stack
+    // when it changed, the preview slots and the HUD text.
+    private void repaintChanges() {
+        Shape piece = engine.getCurrentPiece();
+        int x = engine.getCurrentX();
+        int y = engine.getCurrentY();
+        int ghostY = piece.getShape() == Shape.Tetrominoes.NoShape ? y : engine.findGhostPieceY();
+
+        if (piece != shownPiece || x != shownX || y != shownY) {
+            repaintPiece(shownPiece, shownX, shownY);
+            repaintPiece(piece, x, y);
         }
-
-        // Draw next pieces
-        g.drawString("NEXT", BOARD_WIDTH * BLOCK_SIZE + SIDE_PANEL_WIDTH + 20, 30);
-        for (int i = 0; i < NUM_NEXT_PIECES; i++) {
-            drawPreviewPiece(g, nextPieces[i], 
-                BOARD_WIDTH * BLOCK_SIZE + SIDE_PANEL_WIDTH + 25, 
-                50 + i * PREVIEW_SPACING);
-        }
-
-        // Translate graphics for main board
-        g.translate(SIDE_PANEL_WIDTH, 0);
-
-        // Draw board background
-        g.setColor(new Color(20, 20, 20));
-        g.fillRect(0, 0, BOARD_WIDTH * BLOCK_SIZE, size.height);
-
-        // Draw grid
-        g.setColor(new Color(50, 50, 50));
-        // Vertical lines
-        for (int i = 0; i <= BOARD_WIDTH; i++) {
-            g.drawLine(i * BLOCK_SIZE, 0, i * BLOCK_SIZE, size.height);
-        }
-        // Horizontal lines
-        for (int i = 0; i <= BOARD_HEIGHT; i++) {
-            g.drawLine(0, boardTop + i * BLOCK_SIZE, 
-                      BOARD_WIDTH * BLOCK_SIZE, boardTop + i * BLOCK_SIZE);
-        }
-
-        // Draw ghost piece
-        if (currentPiece.getShape() != Shape.Tetrominoes.NoShape) {
-            int ghostY = findGhostPieceY();
-            for (int i = 0; i < 4; i++) {
-                int x = currentX + currentPiece.x(i);
-                int y = ghostY - currentPiece.y(i);
-                drawGhostSquare(g, x * BLOCK_SIZE,
-                        boardTop + (BOARD_HEIGHT - y - 1) * BLOCK_SIZE,
-                        currentPiece.getShape());
-            }
+        if (piece != shownPiece || x != shownX || ghostY != shownGhostY) {
+            repaintPiece(shownPiece, shownX, shownGhostY);
+            repaintPiece(piece, x, ghostY);
         }
 
-        // Draw current piece
-        if (currentPiece.getShape() != Shape.Tetrominoes.NoShape) {
-            for (int i = 0; i < 4; i++) {
-                int x = currentX + currentPiece.x(i);
-                int y = currentY - currentPiece.y(i);
-                drawSquare(g, x * BLOCK_SIZE,
-                        boardTop + (BOARD_HEIGHT - y - 1) * BLOCK_SIZE,
-                        currentPiece.getShape());
-            }
+        // Rows above both the old and the new stack are empty either way
+        int stackVersion = engine.getPlayfield().getVersion();
+        int stackHeight = engine.getPlayfield().getStackHeight();
+        if (stackVersion != shownStackVersion) {
+            int rows = Math.max(stackHeight, shownStackHeight);
+            repaint(renderer.stackBounds(rows, getWidth(), getHeight(), dirty));
         }
 
-        // Draw board
-        for (int i = 0; i < BOARD_WIDTH; i++) {
-            for (int j = 0; j < BOARD_HEIGHT; j++) {
-                Shape.Tetrominoes shape = Shape.Tetrominoes.values()[board[i][j]];
-                if (shape != Shape.Tetrominoes.NoShape) {
-                    drawSquare(g, i * BLOCK_SIZE,
-                            boardTop + (BOARD_HEIGHT - j - 1) * BLOCK_SIZE, shape);
-                }
+        if (engine.getHoldPiece() != shownHold) {
+            repaint(renderer.previewBounds(-1, getWidth(), getHeight(), dirty));
+        }
+        for (int i = 0; i < NUM_NEXT_PIECES; i++) {
+            if (engine.getNextPiece(i) != shownNext[i]) {
+                repaint(renderer.previewBounds(i, getWidth(), getHeight(), dirty));
+                shownNext[i] = engine.getNextPiece(i);
             }
         }
-        
-        // Reset translation
-        g.translate(-SIDE_PANEL_WIDTH, 0);
-
-        // Draw game over screen
-        if (isGameOver) {
-            drawOverlay(g, "Game Over!", "Score: " + score, "Press R to Play Again");
-        } else if (isPaused) {
-            drawOverlay(g, "Paused", "Score: " + score, "Press ESC to Resume");
-        }
-
-        // Draw score, level, and lines
-        g.setColor(Color.WHITE);
-        g.setFont(new Font("SansSerif", Font.BOLD, 14));
-        int infoX = BOARD_WIDTH * BLOCK_SIZE + 20;
-        int infoY = 20;
-        
-        g.drawString("Score: " + score, infoX, infoY);
-        g.drawString("Level: " + level, infoX, infoY + 20);
-        g.drawString("Lines: " + linesCleared, infoX, infoY + 40);
-    }
-
-    private void drawOverlay(Graphics g, String mainMsg, String scoreMsg, String actionMsg) {
-        Dimension size = getSize();
-        g.setColor(new Color(0, 0, 0, 150));
-        g.fillRect(0, 0, size.width, size.height);
-        
-        g.setColor(Color.WHITE);
-        g.setFont(new Font("Arial", Font.BOLD, 20));
-        
-        FontMetrics fm = g.getFontMetrics();
-        int msgWidth = fm.stringWidth(mainMsg);
-        int scoreWidth = fm.stringWidth(scoreMsg);
-        int actionWidth = fm.stringWidth(actionMsg);
-        
-        g.drawString(mainMsg, (size.width - msgWidth) / 2, size.height / 2 - 30);
-        g.drawString(scoreMsg, (size.width - scoreWidth) / 2, size.height / 2);
-        g.drawString(actionMsg, (size.width - actionWidth) / 2, size.height / 2 + 30);
-    }
-
-    private void drawSquare(Graphics g, int x, int y, Shape.Tetrominoes shape) {
-        Color[] colors = {
-            new Color(0, 0, 0), new Color(204, 102, 102),
-            new Color(102, 204, 102), new Color(102, 102, 204),
-            new Color(204, 204, 102), new Color(204, 102, 204),
-            new Color(102, 204, 204), new Color(218, 170, 0)
-        };
-
-        Color color = colors[shape.ordinal()];
 
-        g.setColor(color);
-        g.fillRect(x + 1, y + 1, BLOCK_SIZE - 2, BLOCK_SIZE - 2);
-
-        g.setColor(color.brighter());
-        g.drawLine(x, y + BLOCK_SIZE - 1, x, y);
-        g.drawLine(x, y, x + BLOCK_SIZE - 1, y);
+        if (engine.getScore() != shownScore || engine.getLevel() != shownLevel
+                || engine.getLinesCleared() != shownLines) {
+            repaint(renderer.hudBounds(getWidth(), getHeight(), dirty));
+        }
 
-        g.setColor(color.darker());
-        g.drawLine(x + 1, y + BLOCK_SIZE - 1,
-                x + BLOCK_SIZE - 1, y + BLOCK_SIZE - 1);
-        g.drawLine(x + BLOCK_SIZE - 1, y + BLOCK_SIZE - 1,
-                x + BLOCK_SIZE - 1, y + 1);
+        shownPiece = piece;
+        shownX = x;
+        shownY = y;
+        shownGhostY = ghostY;
+        shownStackVersion = stackVersion;
+        shownStackHeight = stackHeight;
+        shownHold = engine.getHoldPiece();
+        shownScore = engine.getScore();
+        shownLevel = engine.getLevel();
+        shownLines = engine.getLinesCleared();
     }
 
-    private void drawGhostSquare(Graphics g, int x, int y, Shape.Tetrominoes shape) {
-        Color[] colors = {
-            new Color(0, 0, 0), new Color(204, 102, 102),
-            new Color(102, 204, 102), new Color(102, 102, 204),
-            new Color(204, 204, 102), new Color(204, 102, 204),
-            new Color(102, 204, 204), new Color(218, 170, 0)
-        };
-
-        Color color = colors[shape.ordinal()];
-        color = new Color(color.getRed(), color.getGreen(), color.getBlue(), 50); // Make it translucent
+    private void repaintPiece(Shape piece, int x, int y) {
+        if (piece == null || piece.getShape() == Shape.Tetrominoes.NoShape) {
+            return;
+        }
+        repaint(renderer.cellBounds(x + piece.minX(), y - piece.minY(), piece.width(), piece.height(),
+                getWidth(), getHeight(), dirty));
+    }
 
-        g.setColor(color);
-        g.fillRect(x + 1, y + 1, BLOCK_SIZE - 2, BLOCK_SIZE - 2);
+    private class GameCycle implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            doGameCycle();
+        }
     }
 
-    private void drawPiece(Graphics g, Shape piece, int x, int y) {
-        for (int i = 0; i < 4; i++) {
-            int pieceX = x + piece.x(i) * (BLOCK_SIZE / 2);
-            int pieceY = y + piece.y(i) * (BLOCK_SIZE / 2);
-            drawSquare(g, pieceX, pieceY, piece.getShape());
+    // Hands control to a bot, which then issues one input every
+    // BOT_INPUT_DELAY ms. Passing null gives control back to the keyboard.
+    public void setPlayer(Player player) {
+        this.player = player;
+        botPlayed |= player != null;
+        botInputs.clear();
+        nextBotInput = 0;
+        if (player != null) {
+            botTimer.start();
+        } else {
+            botTimer.stop();
         }
     }
 
-    private void drawPreviewPiece(Graphics g, Shape piece, int x, int y) {
-        // Calculate the bounds of the piece
-        int minX = 0, minY = 0, maxX = 0, maxY = 0;
-        for (int i = 0; i < 4; i++) {
-            minX = Math.min(minX, piece.x(i));
-            minY = Math.min(minY, piece.y(i));
-            maxX = Math.max(maxX, piece.x(i));
-            maxY = Math.max(maxY, piece.y(i));
+    private void doBotStep() {
+        if (isPaused || !engine.isStarted() || engine.isGameOver()) {
+            return;
         }
-        
-        // Center the piece in the preview area
-        int width = maxX - minX + 1;
-        int height = maxY - minY + 1;
-        int centerX = x + (4 - width) * PREVIEW_BLOCK_SIZE / 2;
-        int centerY = y + (2 - height) * PREVIEW_BLOCK_SIZE / 2;
-        
-        for (int i = 0; i < 4; i++) {
-            int pieceX = centerX + (piece.x(i) - minX) * PREVIEW_BLOCK_SIZE;
-            int pieceY = centerY + (piece.y(i) - minY) * PREVIEW_BLOCK_SIZE;
-            drawPreviewSquare(g, pieceX, pieceY, piece.getShape());
+        // Replan once the planned piece has locked, even if gravity locked it early
+        if (nextBotInput >= botInputs.size() || botPlannedAt != engine.getPiecesPlaced()) {
+            botInputs.clear();
+            nextBotInput = 0;
+            botPlannedAt = engine.getPiecesPlaced();
+            player.plan(engine, botInputs);
         }
+        submitInput(botInputs.get(nextBotInput++), System.nanoTime());
     }
 
-    private void drawPreviewSquare(Graphics g, int x, int y, Shape.Tetrominoes shape) {
-        Color[] colors = {
-            new Color(0, 0, 0), new Color(204, 102, 102),
-            new Color(102, 204, 102), new Color(102, 102, 204),
-            new Color(204, 204, 102), new Color(204, 102, 204),
-            new Color(102, 204, 204), new Color(218, 170, 0)
-        };
-
-        Color color = colors[shape.ordinal()];
-
-        g.setColor(color);
-        g.fillRect(x + 1, y + 1, PREVIEW_BLOCK_SIZE - 2, PREVIEW_BLOCK_SIZE - 2);
-
-        g.setColor(color.brighter());
-        g.drawLine(x, y + PREVIEW_BLOCK_SIZE - 1, x, y);
-        g.drawLine(x, y, x + PREVIEW_BLOCK_SIZE - 1, y);
-
-        g.setColor(color.darker());
-        g.drawLine(x + 1, y + PREVIEW_BLOCK_SIZE - 1,
-                x + PREVIEW_BLOCK_SIZE - 1, y + PREVIEW_BLOCK_SIZE - 1);
-        g.drawLine(x + PREVIEW_BLOCK_SIZE - 1, y + PREVIEW_BLOCK_SIZE - 1,
-                x + PREVIEW_BLOCK_SIZE - 1, y + 1);
+    // Records every game started from now on to a replay-<start time>.rpl
+    // file in directory.
+    public void setRecordingDirectory(Path directory) {
+        this.recordingDirectory = directory;
     }
 
-    private int findGhostPieceY() {
-        int ghostY = currentY;
-        while (ghostY > 0) {
-            if (!canMoveTo(currentPiece, currentX, ghostY - 1)) {
-                break;
-            }
-            ghostY--;
+    private void startRecording(long now) {
+        stopRecording();
+        if (recordingDirectory == null) {
+            return;
+        }
+        try {
+            recorder = ReplayRecorder.forGame(recordingDirectory.resolve("replay-" + now + ".rpl"), engine, now);
+            engine.setRecorder(recorder);
+        } catch (IOException e) {
+            System.err.println("Could not start replay recording: " + e);
         }
-        return ghostY;
     }
 
-    private boolean canMoveTo(Shape piece, int newX, int newY) {
-        for (int i = 0; i < 4; i++) {
-            int x = newX + piece.x(i);
-            int y = newY - piece.y(i);
+    private void stopRecording() {
+        if (recorder == null) {
+            return;
+        }
+        engine.setRecorder(null);
+        try {
+            recorder.close();
+        } catch (IOException e) {
+            System.err.println("Could not finish replay " + recorder.getPath() + ": " + e);
+        }
+        recorder = null;
+    }
 
-            if (x < 0 || x >= BOARD_WIDTH || y < 0 || y >= BOARD_HEIGHT) {
-                return false;
-            }
+    public void setScoreStore(ScoreStore store) {
+        this.scoreStore = store;
+    }
 
-            if (board[x][y] != 0) {
-                return false;
-            }
+    private void storeResult() {
+        if (scoreStore == null || replay != null || botPlayed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            scoreStore.append(engine, now, now - gameStartedAt);
+        } catch (RuntimeException e) {
+            // Losing a score must not take the game down
+            System.err.println("Could not store score in " + scoreStore.getPath() + ": " + e);
         }
-        return true;
     }
 
-    private class GameCycle implements ActionListener {
-        @Override
-        public void actionPerformed(ActionEvent e) {
-            doGameCycle();
+    // Shows a recorded game instead of a live one. The board must have been
+    // created with the replay's engine. start() then plays it back at the
+    // recorded pace, or jumps straight to the final position when fast is set.
+    public void setReplay(ReplayPlayer replay, boolean fast) {
+        if (replay.getEngine() != engine) {
+            throw new IllegalArgumentException("Replay drives a different engine");
         }
+        this.replay = replay;
+        this.fastReplay = fast;
     }
 
-    private void doGameCycle() {
-        if (isFallingFinished) {
-            isFallingFinished = false;
-            newPiece();
-        } else {
-            if (isAtBottom) {
-                // If piece has been at bottom for more than LOCK_DELAY
-                if (System.currentTimeMillis() - lastMoveDownTime > LOCK_DELAY) {
-                    pieceDropped();
-                }
-            } else {
-                oneLineDown();
-            }
-        }
+    // Shows board side (VersusClient.YOU or OPPONENT) of a versus match. The
+    // board must have been created with a VersusClient.newMirror engine. The
+    // server runs the game: keys on the YOU board are sent to it, and
+    // remoteUpdated shows whatever it sent back.
+    public void setRemote(VersusClient client, int side) {
+        this.remote = client;
+        this.remoteSide = side;
     }
 
-    private void newPiece() {
-        currentPiece = nextPieces[0];
-        // Shift next pieces
-        for (int i = 0; i < NUM_NEXT_PIECES - 1; i++) {
-            nextPieces[i] = nextPieces[i + 1];
+    // Shows the latest state the client has received. Call on the EDT.
+    public void remoteUpdated() {
+        boolean wasOver = engine.isGameOver();
+        if (!remote.takeLatest(remoteSide, engine)) {
+            return;
         }
-        nextPieces[NUM_NEXT_PIECES - 1] = new Shape();
-        nextPieces[NUM_NEXT_PIECES - 1].setRandomShape();
-        
-        currentX = BOARD_WIDTH / 2;
-        currentY = BOARD_HEIGHT - 1 + currentPiece.minY();
-
-        if (!tryMove(currentPiece, currentX, currentY - 1)) {
-            currentPiece.setShape(Shape.Tetrominoes.NoShape);
-            gameOver();
+        if (engine.isGameOver() != wasOver) {
+            // The overlay appears or goes away
+            repaint();
         }
+        repaintChanges();
     }
 
-    private void oneLineDown() {
-        if (!tryMove(currentPiece, currentX, currentY - 1)) {
-            if (!isAtBottom) {
-                isAtBottom = true;
-                lastMoveDownTime = System.currentTimeMillis();
-            }
+    private void sendRemote(GameInput input) {
+        try {
+            remote.send(input);
+        } catch (IOException e) {
+            System.err.println("Could not send input to the versus server: " + e);
         }
     }
 
-    private void pieceDropped() {
-        for (int i = 0; i < 4; i++) {
-            int x = currentX + currentPiece.x(i);
-            int y = currentY - currentPiece.y(i);
-            board[x][y] = currentPiece.getShape().ordinal();
+    private void startReplay() {
+        if (fastReplay) {
+            try {
+                replay.playToEnd();
+            } catch (IOException e) {
+                System.err.println("Replay " + replay.getPath() + " failed: " + e);
+            }
+            repaint();
+            repaintChanges();
+            return;
         }
-
-        removeFullLines();
-        canHold = true;
-        isAtBottom = false;
-        newPiece();
+        replayStartedAt = System.currentTimeMillis();
+        replayTimer.start();
     }
 
-    private void removeFullLines() {
-        int numFullLines = 0;
-
-        for (int i = BOARD_HEIGHT - 1; i >= 0; i--) {
-            boolean lineIsFull = true;
-
-            for (int j = 0; j < BOARD_WIDTH; j++) {
-                if (board[j][i] == Shape.Tetrominoes.NoShape.ordinal()) {
-                    lineIsFull = false;
-                    break;
-                }
+    private void doReplayStep() {
+        try {
+            if (replay.playUntil(System.currentTimeMillis() - replayStartedAt)) {
+                stateChanged();
             }
-
-            if (lineIsFull) {
-                numFullLines++;
-                // Move down all lines above this one
-                for (int k = i; k < BOARD_HEIGHT - 1; k++) {
-                    for (int j = 0; j < BOARD_WIDTH; j++) {
-                        board[j][k] = board[j][k + 1];
-                    }
-                }
-                // Clear the top line
-                for (int j = 0; j < BOARD_WIDTH; j++) {
-                    board[j][BOARD_HEIGHT - 1] = Shape.Tetrominoes.NoShape.ordinal();
-                }
-                
-                // Move the checking position back one line since we moved everything down
-                i++;
+            if (replay.nextEventTime() < 0) {
+                replayTimer.stop();
             }
+        } catch (IOException e) {
+            replayTimer.stop();
+            System.err.println("Replay " + replay.getPath() + " failed: " + e);
         }
+    }
 
-        if (numFullLines > 0) {
-            updateScore(numFullLines);
-            repaint();
+    private void doGameCycle() {
+        GameEvents.GameCycle event = GameEvents.isRecording() ? new GameEvents.GameCycle() : null;
+        if (event != null) {
+            event.begin();
+        }
+        int drained = inputs.drain(applyInput);
+        boolean changed = engine.step(System.currentTimeMillis());
+        if (changed) {
+            stateChanged();
+        }
+        GAME_CYCLES.increment();
+        if (event != null && event.shouldCommit()) {
+            event.inputs = drained;
+            event.changed = changed;
+            event.commit();
         }
     }
 
-    private void updateScore(int numLines) {
-        if (numLines == 0) return;
-        
-        // Score calculation based on number of lines cleared
-        int points = switch(numLines) {
-            case 1 -> 100 * level;   // Single
-            case 2 -> 300 * level;   // Double
-            case 3 -> 500 * level;   // Triple
-            case 4 -> 800 * level;   // Tetris
-            default -> 0;
-        };
-        
-        score += points;
-        linesCleared += numLines;
-        
-        // Level up every LINES_PER_LEVEL lines
-        level = (linesCleared / LINES_PER_LEVEL) + 1;
-        
-        // Update fall speed based on level
-        timer.setDelay(Math.max(NORMAL_FALL_SPEED - ((level - 1) * 50), 50));
+    // Queues an input that happened at nanos and applies everything queued.
+    // Keys, bot moves and gravity all run on the EDT, so draining right away
+    // keeps them in the order they happened without waiting for the next
+    // gravity tick.
+    private void submitInput(GameInput input, long nanos) {
+        inputs.offer(input, nanos);
+        inputs.drain(applyInput);
     }
 
-    private boolean tryMove(Shape newPiece, int newX, int newY) {
-        if (!canMoveTo(newPiece, newX, newY)) {
-            return false;
+    // Applies an input to the engine and refreshes the timer and screen.
+    private void applyInput(GameInput input, long offeredNanos) {
+        boolean changed = engine.apply(input, System.currentTimeMillis());
+        long applied = System.nanoTime();
+        inputLatency.record(applied - offeredNanos, applied);
+        if (changed) {
+            stateChanged();
         }
+    }
 
-        currentPiece = newPiece;
-        currentX = newX;
-        currentY = newY;
-
-        // Reset lock delay if piece is moved horizontally or rotated while at bottom
-        if (isAtBottom && !canMoveTo(currentPiece, currentX, currentY - 1)) {
-            lastMoveDownTime = System.currentTimeMillis();
+    private void stateChanged() {
+        if (engine.isGameOver()) {
+            gameOver();
+            return;
+        }
+        if (replay != null) {
+            repaintChanges();
+            return;
         }
+        updateTimerDelay();
+        repaintChanges();
+    }
 
-        repaint();
-        return true;
+    private void updateTimerDelay() {
+        timer.setDelay(isDownPressed ? SOFT_DROP_SPEED : engine.getFallDelay());
     }
 
-    private void dropDown() {
-        int newY = currentY;
-        while (newY > 0) {
-            if (!tryMove(currentPiece, currentX, newY - 1)) {
-                break;
-            }
-            newY--;
-        }
-        isAtBottom = true;
-        lastMoveDownTime = System.currentTimeMillis();
-        pieceDropped();
+    // Game action bound to a key, or null for keys handled elsewhere
+    static GameInput inputForKey(int keyCode) {
+        return switch (keyCode) {
+            case KeyEvent.VK_LEFT -> GameInput.MOVE_LEFT;
+            case KeyEvent.VK_RIGHT -> GameInput.MOVE_RIGHT;
+            case KeyEvent.VK_DOWN, KeyEvent.VK_D -> GameInput.SOFT_DROP;
+            case KeyEvent.VK_UP -> GameInput.ROTATE;
+            case KeyEvent.VK_SPACE -> GameInput.HARD_DROP;
+            case KeyEvent.VK_C -> GameInput.HOLD;
+            default -> null;
+        };
     }
 
-    private class TAdapter extends KeyAdapter {
-        private boolean isDownPressed = false;
+    // System.nanoTime() at which an input event happened, derived from its
+    // wall-clock timestamp, so latency includes the wait for the EDT
+    static long eventNanos(InputEvent e) {
+        long age = System.currentTimeMillis() - e.getWhen();
+        return System.nanoTime() - Math.max(0, age) * 1_000_000L;
+    }
 
+    private class TAdapter extends KeyAdapter {
         @Override
         public void keyPressed(KeyEvent e) {
-            if (isGameOver) {
+            if (replay != null) {
+                return;
+            }
+            if (remote != null) {
+                GameInput input = inputForKey(e.getKeyCode());
+                if (input != null && remoteSide == VersusClient.YOU) {
+                    sendRemote(input);
+                }
+                return;
+            }
+
+            if (engine.isGameOver()) {
                 if (e.getKeyCode() == KeyEvent.VK_R) {
                     restart();
                 }
@@ -474,26 +427,20 @@ public class Board extends JPanel {
                 return;
             }
 
-            if (!isStarted || currentPiece.getShape() == Shape.Tetrominoes.NoShape) {
+            if (!engine.isStarted() || isPaused || player != null) {
                 return;
             }
 
             int keycode = e.getKeyCode();
 
-            switch (keycode) {
-                case KeyEvent.VK_LEFT -> tryMove(currentPiece, currentX - 1, currentY);
-                case KeyEvent.VK_RIGHT -> tryMove(currentPiece, currentX + 1, currentY);
-                case KeyEvent.VK_DOWN -> {
-                    if (!isDownPressed) {
-                        isDownPressed = true;
-                        timer.setDelay(SOFT_DROP_SPEED);
-                    }
-                    oneLineDown();
-                }
-                case KeyEvent.VK_UP -> tryMove(currentPiece.rotateLeft(), currentX, currentY);
-                case KeyEvent.VK_SPACE -> dropDown();
-                case KeyEvent.VK_D -> oneLineDown();
-                case KeyEvent.VK_C -> holdCurrentPiece();
+            if (keycode == KeyEvent.VK_DOWN && !isDownPressed) {
+                isDownPressed = true;
+                updateTimerDelay();
+            }
+
+            GameInput input = inputForKey(keycode);
+            if (input != null) {
+                submitInput(input, eventNanos(e));
             }
         }
 
@@ -501,32 +448,11 @@ public class Board extends JPanel {
         public void keyReleased(KeyEvent e) {
             if (e.getKeyCode() == KeyEvent.VK_DOWN) {
                 isDownPressed = false;
-                timer.setDelay(NORMAL_FALL_SPEED);
+                updateTimerDelay();
             }
         }
     }
 
-    private void holdCurrentPiece() {
-        if (!canHold) return;
-        
-        Shape tempPiece = new Shape();
-        tempPiece.setShape(currentPiece.getShape());
-        
-        if (holdPiece == null) {
-            holdPiece = tempPiece;
-            newPiece();
-        } else {
-            Shape temp = holdPiece;
-            holdPiece = tempPiece;
-            currentPiece = temp;
-            currentX = BOARD_WIDTH / 2;
-            currentY = BOARD_HEIGHT - 1 + currentPiece.minY();
-        }
-        
-        canHold = false;
-        repaint();
-    }
-
     private void pause() {
         isPaused = !isPaused;
         if (isPaused) {
@@ -541,36 +467,42 @@ public class Board extends JPanel {
         if (isPaused) {
             return;
         }
+        if (replay != null) {
+            startReplay();
+            return;
+        }
+        if (remote != null) {
+            return;
+        }
 
-        isStarted = true;
-        isFallingFinished = false;
-        numLinesRemoved = 0;
-        initBoard();
-        newPiece();
-        timer.setDelay(NORMAL_FALL_SPEED);
+        long now = System.currentTimeMillis();
+        engine.start(now);
+        gameStartedAt = now;
+        botPlayed = player != null;
+        startRecording(now);
+        isDownPressed = false;
+        updateTimerDelay();
         timer.start();
     }
 
     private void gameOver() {
-        isGameOver = true;
         timer.stop();
+        replayTimer.stop();
+        stopRecording();
+        storeResult();
         repaint();
+        repaintChanges();
     }
 
     public void restart() {
-        isGameOver = false;
-        isStarted = true;
-        isFallingFinished = false;
-        numLinesRemoved = 0;
-        score = 0;
-        level = 1;
-        linesCleared = 0;
-        initBoard();
-        initNextPieces();
-        holdPiece = null;
-        canHold = true;
-        newPiece();
+        long now = System.currentTimeMillis();
+        engine.start(now);
+        gameStartedAt = now;
+        botPlayed = player != null;
+        startRecording(now);
+        updateTimerDelay();
         timer.start();
         repaint();
+        repaintChanges();
     }
 }
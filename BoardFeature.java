@@ -0,0 +1,5 @@
+// One term of an Evaluator's score. heights holds the column heights of field,
+// computed once per evaluation and shared by all features.
+public interface BoardFeature {
+    double measure(Playfield field, int[] heights, int linesCleared);
+}
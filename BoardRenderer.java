@@ -0,0 +1,499 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+// Draws a GameEngine's state: side panels with hold and next previews, the
+// board with ghost and current piece, the HUD and the pause/game over overlay.
+// Shared by the Swing Board and the active-rendering GameCanvas.
+//
+// The constants below describe the layout at the preferred size. A larger or
+// smaller component, or a HiDPI screen, scales all of it uniformly, and the
+// frame is drawn in device pixels with block sprites rendered at the scaled
+// size, so a fullscreen 4K board blits the same number of images as the
+// default one. Sprites and fonts are only rebuilt when the size changes.
+//
+// The background, grid and locked stack are cached in a back buffer that is
+// only redrawn when the stack changes, and then only up to the taller of the
+// old and new stack, so tall boards cost no more than short ones. Nothing is
+// allocated per frame, except a scaled Graphics copy on HiDPI screens.
+public class BoardRenderer {
+    static final int DEFAULT_BLOCK_SIZE = 20;
+    static final int SIDE_PANEL_WIDTH = 100;
+    static final int NUM_NEXT_PIECES = GameEngine.NUM_NEXT_PIECES;
+    static final int PREVIEW_BLOCK_SIZE = 15;
+    static final int PREVIEW_SPACING = 60;
+    static final int HUD_HEIGHT = 70;
+    static final int HOLD_X = 25;
+    static final int PREVIEW_Y = 50;
+    private static final int NEXT_X = 25;
+    private static final int LABEL_X = 20;
+    private static final int LABEL_Y = 30;
+    private static final int HUD_X = 20;
+    private static final int HUD_LINE_HEIGHT = 20;
+    private static final int OVERLAY_LINE_HEIGHT = 30;
+
+    private static final Color SIDE_PANEL_COLOR = new Color(40, 40, 40);
+    private static final Color BOARD_BACKGROUND_COLOR = new Color(20, 20, 20);
+    private static final Color GRID_COLOR = new Color(50, 50, 50);
+    private static final Color OVERLAY_COLOR = new Color(0, 0, 0, 150);
+    private static final Font LABEL_FONT = new Font("Dialog", Font.PLAIN, 12);
+    private static final Font HUD_FONT = new Font("SansSerif", Font.BOLD, 14);
+    private static final Font OVERLAY_FONT = new Font("Arial", Font.BOLD, 20);
+
+    private static final MetricsRegistry.Counter REPAINTS = MetricsRegistry.getDefault()
+            .counter("tetris_repaints_total", "Frames drawn by BoardRenderer");
+    private static final MetricsRegistry.Histogram PAINT_TIME = MetricsRegistry.getDefault()
+            .histogram("tetris_paint_duration", "Time to draw one frame");
+
+    private final int boardWidth;
+    private final int boardHeight;
+    // Nominal block size at the preferred size
+    private final int blockSize;
+    private final CachedLabel scoreText = new CachedLabel("Score: ");
+    private final CachedLabel levelText = new CachedLabel("Level: ");
+    private final CachedLabel linesText = new CachedLabel("Lines: ");
+    private final OverlayText overlayScoreText = new OverlayText("");
+    private final OverlayText gameOverText = new OverlayText("Game Over!");
+    private final OverlayText pausedText = new OverlayText("Paused");
+    private final OverlayText playAgainText = new OverlayText("Press R to Play Again");
+    private final OverlayText resumeText = new OverlayText("Press ESC to Resume");
+    private final Rectangle clipBounds = new Rectangle();
+    private double deviceScale = 1;
+
+    // Geometry in device pixels, recomputed by layout() for the size and
+    // screen scale it was last called with
+    private int layoutWidth = -1;
+    private int layoutHeight = -1;
+    private double layoutScale;
+    private int deviceWidth;
+    private int deviceHeight;
+    private double scale;
+    private int block;
+    private int side;
+    private int boardPixels;
+    private int left;
+    private int holdX;
+    private int nextX;
+    private int labelY;
+    private int previewY;
+    private int previewSpacing;
+    private int previewBlock;
+    private int hudX;
+    private int hudHeight;
+    private int hudLine;
+    private int overlayLine;
+    private Font labelFont;
+    private Font hudFont;
+    private Font overlayFont;
+    private BlockSprites blockSprites;
+    private BlockSprites previewSprites;
+
+    private BufferedImage stackImage;
+    private int stackImageVersion;
+    // Rows of the stack drawn into stackImage
+    private int stackImageRows;
+
+    public BoardRenderer() {
+        this(GameEngine.BOARD_WIDTH, GameEngine.BOARD_HEIGHT, DEFAULT_BLOCK_SIZE);
+    }
+
+    public BoardRenderer(int boardWidth, int boardHeight, int blockSize) {
+        this.boardWidth = boardWidth;
+        this.boardHeight = boardHeight;
+        this.blockSize = blockSize;
+    }
+
+    // Largest block size, up to the default, at which a board fits in the
+    // given number of pixels next to the side panels
+    public static int fitBlockSize(int boardWidth, int boardHeight, int availableWidth, int availableHeight) {
+        int size = Math.min((availableWidth - SIDE_PANEL_WIDTH * 2) / boardWidth, availableHeight / boardHeight);
+        return Math.max(1, Math.min(DEFAULT_BLOCK_SIZE, size));
+    }
+
+    // Device pixels per component pixel on the screen showing gc
+    public static double deviceScale(GraphicsConfiguration gc) {
+        return gc == null ? 1 : gc.getDefaultTransform().getScaleX();
+    }
+
+    // Size at which everything is drawn at its nominal size on an unscaled
+    // screen; larger components scale the whole layout up to fill them
+    public Dimension getPreferredSize() {
+        return new Dimension(boardWidth * blockSize + SIDE_PANEL_WIDTH * 2,
+                Math.max(boardHeight * blockSize, PREVIEW_Y + NUM_NEXT_PIECES * PREVIEW_SPACING));
+    }
+
+    // Block size in device pixels at the last painted size
+    public int getBlockSize() {
+        return block;
+    }
+
+    // Device pixels per component pixel, from the component's screen
+    public void setDeviceScale(double scale) {
+        deviceScale = scale > 0 ? scale : 1;
+    }
+
+    // Component area covering columns column..column+columns-1 and the given
+    // number of rows down from topRow
+    public Rectangle cellBounds(int column, int topRow, int columns, int rows,
+                                int width, int height, Rectangle out) {
+        layout(width, height);
+        return toComponent(left + side + column * block, rowTop(topRow), columns * block, rows * block, out);
+    }
+
+    // Component area of the board from the top of the given number of stack
+    // rows down to the bottom
+    public Rectangle stackBounds(int rows, int width, int height, Rectangle out) {
+        layout(width, height);
+        int top = rowTop(rows - 1);
+        return toComponent(left + side, top, boardPixels, deviceHeight - top, out);
+    }
+
+    // Component area of a preview slot: -1 for hold, else the index of the
+    // next piece. A piece drawn there stays within 4x4 preview blocks starting
+    // one block above the slot.
+    public Rectangle previewBounds(int slot, int width, int height, Rectangle out) {
+        layout(width, height);
+        int x = slot < 0 ? holdX : nextX;
+        int y = previewY + Math.max(slot, 0) * previewSpacing;
+        return toComponent(x, y - previewBlock, 4 * previewBlock, 4 * previewBlock, out);
+    }
+
+    public Rectangle hudBounds(int width, int height, Rectangle out) {
+        layout(width, height);
+        return toComponent(hudX, 0, deviceWidth - hudX, hudHeight, out);
+    }
+
+    public void paint(Graphics g, GameEngine engine, int width, int height, boolean isPaused) {
+        GameEvents.Paint event = GameEvents.isRecording() ? new GameEvents.Paint() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long start = System.nanoTime();
+        layout(width, height);
+        boolean stackRedrawn;
+        if (deviceScale == 1 || !(g instanceof Graphics2D)) {
+            stackRedrawn = draw(g, engine, isPaused);
+        } else {
+            // Undo the screen's scaling and draw in device pixels, so blocks
+            // are blitted 1:1 from sprites rendered at their real size
+            Graphics2D device = (Graphics2D) g.create();
+            try {
+                device.scale(1 / deviceScale, 1 / deviceScale);
+                stackRedrawn = draw(device, engine, isPaused);
+            } finally {
+                device.dispose();
+            }
+        }
+        PAINT_TIME.record(System.nanoTime() - start);
+        REPAINTS.increment();
+        if (event != null && event.shouldCommit()) {
+            event.stackRedrawn = stackRedrawn;
+            event.commit();
+        }
+    }
+
+    // Recomputes the geometry in device pixels when the component size or
+    // screen scale changed since the last call. The preferred layout is
+    // scaled uniformly to the largest size that fits, centered horizontally
+    // and with the board on the bottom edge; at the preferred size on an
+    // unscaled screen this is exactly the nominal layout.
+    private void layout(int width, int height) {
+        if (width == layoutWidth && height == layoutHeight && deviceScale == layoutScale) {
+            return;
+        }
+        layoutWidth = width;
+        layoutHeight = height;
+        layoutScale = deviceScale;
+        deviceWidth = Math.max(1, (int) Math.ceil(width * deviceScale));
+        deviceHeight = Math.max(1, (int) Math.ceil(height * deviceScale));
+
+        Dimension preferred = getPreferredSize();
+        scale = Math.min((double) deviceWidth / preferred.width, (double) deviceHeight / preferred.height);
+        block = Math.max(1, scaled(blockSize));
+        side = scaled(SIDE_PANEL_WIDTH);
+        boardPixels = boardWidth * block;
+        left = Math.max(0, (deviceWidth - boardPixels - 2 * side) / 2);
+        holdX = left + scaled(HOLD_X);
+        nextX = left + side + boardPixels + scaled(NEXT_X);
+        labelY = scaled(LABEL_Y);
+        previewY = scaled(PREVIEW_Y);
+        previewSpacing = scaled(PREVIEW_SPACING);
+        previewBlock = Math.max(1, scaled(PREVIEW_BLOCK_SIZE));
+        hudX = left + boardPixels + scaled(HUD_X);
+        hudHeight = scaled(HUD_HEIGHT);
+        hudLine = scaled(HUD_LINE_HEIGHT);
+        overlayLine = scaled(OVERLAY_LINE_HEIGHT);
+        labelFont = scaled(LABEL_FONT);
+        hudFont = scaled(HUD_FONT);
+        overlayFont = scaled(OVERLAY_FONT);
+
+        blockSprites = BlockSprites.forSize(block);
+        previewSprites = BlockSprites.forSize(previewBlock);
+        stackImage = null;
+    }
+
+    private int scaled(int pixels) {
+        return (int) (pixels * scale);
+    }
+
+    private Font scaled(Font font) {
+        return scale == 1 ? font : font.deriveFont(font.getSize2D() * (float) scale);
+    }
+
+    // Smallest component rectangle covering the given device pixels
+    private Rectangle toComponent(int x, int y, int width, int height, Rectangle out) {
+        int x0 = (int) Math.floor(x / deviceScale);
+        int y0 = (int) Math.floor(y / deviceScale);
+        int x1 = (int) Math.ceil((x + width) / deviceScale);
+        int y1 = (int) Math.ceil((y + height) / deviceScale);
+        out.setBounds(x0, y0, x1 - x0, y1 - y0);
+        return out;
+    }
+
+    // Device y of the top edge of board row `row`
+    private int rowTop(int row) {
+        return deviceHeight - (row + 1) * block;
+    }
+
+    // Draws one frame in device pixels; returns whether the cached stack
+    // image was redrawn
+    private boolean draw(Graphics g, GameEngine engine, boolean isPaused) {
+        Shape piece = engine.getCurrentPiece();
+        int pieceX = engine.getCurrentX();
+        int pieceY = engine.getCurrentY();
+        int width = deviceWidth;
+        int height = deviceHeight;
+        int boardLeft = left + side;
+        int boardRight = boardLeft + boardPixels;
+
+        clipBounds.setBounds(0, 0, width, height);
+        Rectangle clip = g.getClipBounds(clipBounds);
+
+        // Draw side panels background, including any margin beside them
+        g.setColor(SIDE_PANEL_COLOR);
+        g.fillRect(0, 0, boardLeft, height); // Left panel
+        g.fillRect(boardRight, 0, width - boardRight, height); // Right panel
+
+        // Draw hold piece
+        g.setColor(Color.WHITE);
+        g.setFont(labelFont);
+        if (intersects(clip, 0, 0, boardLeft, height)) {
+            g.drawString("HOLD", left + scaled(LABEL_X), labelY);
+            if (engine.getHoldPiece() != null) {
+                drawPreviewPiece(g, engine.getHoldPiece(), holdX, previewY);
+            }
+        }
+
+        // Draw next pieces
+        if (intersects(clip, boardRight, 0, width - boardRight, height)) {
+            g.drawString("NEXT", boardRight + scaled(LABEL_X), labelY);
+            for (int i = 0; i < NUM_NEXT_PIECES; i++) {
+                drawPreviewPiece(g, engine.getNextPiece(i), nextX, previewY + i * previewSpacing);
+            }
+        }
+
+        // Draw background, grid and locked stack from the cached image
+        boolean stackRedrawn = updateStackImage(g, engine.getPlayfield());
+        g.drawImage(stackImage, boardLeft, 0, null);
+
+        // Translate graphics for main board
+        g.translate(boardLeft, 0);
+
+        // Draw ghost piece
+        if (piece.getShape() != Shape.Tetrominoes.NoShape) {
+            int ghostY = engine.findGhostPieceY();
+            for (int i = 0; i < 4; i++) {
+                int x = pieceX + piece.x(i);
+                int y = ghostY - piece.y(i);
+                blockSprites.drawGhost(g, x * block, rowTop(y), piece.getShape());
+            }
+        }
+
+        // Draw current piece
+        if (piece.getShape() != Shape.Tetrominoes.NoShape) {
+            for (int i = 0; i < 4; i++) {
+                int x = pieceX + piece.x(i);
+                int y = pieceY - piece.y(i);
+                blockSprites.drawBlock(g, x * block, rowTop(y), piece.getShape());
+            }
+        }
+
+        // Reset translation
+        g.translate(-boardLeft, 0);
+
+        // Draw game over screen
+        if (engine.isGameOver()) {
+            drawOverlay(g, width, height, gameOverText, overlayScoreText.set(scoreText.of(engine.getScore())), playAgainText);
+        } else if (isPaused) {
+            drawOverlay(g, width, height, pausedText, overlayScoreText.set(scoreText.of(engine.getScore())), resumeText);
+        }
+
+        // Draw score, level, and lines
+        if (intersects(clip, hudX, 0, width - hudX, hudHeight)) {
+            g.setColor(Color.WHITE);
+            g.setFont(hudFont);
+            int infoY = hudLine;
+
+            g.drawString(scoreText.of(engine.getScore()), hudX, infoY);
+            g.drawString(levelText.of(engine.getLevel()), hudX, infoY + hudLine);
+            g.drawString(linesText.of(engine.getLinesCleared()), hudX, infoY + 2 * hudLine);
+        }
+        return stackRedrawn;
+    }
+
+    private static boolean intersects(Rectangle clip, int x, int y, int width, int height) {
+        return x < clip.x + clip.width && clip.x < x + width
+                && y < clip.y + clip.height && clip.y < y + height;
+    }
+
+    // Redraws the board background, grid and locked stack into the back
+    // buffer. This only happens when a piece locks, lines clear or the panel
+    // is resized; moving pieces are drawn on top of it. A stack change only
+    // touches the rows up to the taller of the old and new stack, since every
+    // row above both is empty before and after. Returns whether anything
+    // was redrawn.
+    private boolean updateStackImage(Graphics target, Playfield playfield) {
+        if (stackImage != null && stackImageVersion == playfield.getVersion()) {
+            return false;
+        }
+
+        int rows;
+        Graphics g;
+        if (stackImage == null) {
+            stackImage = createStackImage(target, boardPixels, deviceHeight);
+            g = stackImage.getGraphics();
+            drawEmptyBoard(g, 0, deviceHeight);
+            rows = playfield.getStackHeight();
+        } else {
+            g = stackImage.getGraphics();
+            rows = Math.min(boardHeight, Math.max(stackImageRows, playfield.getStackHeight()));
+            drawEmptyBoard(g, rowTop(rows - 1), deviceHeight);
+        }
+        stackImageVersion = playfield.getVersion();
+        stackImageRows = playfield.getStackHeight();
+
+        // Draw board
+        for (int j = 0; j < rows; j++) {
+            int top = rowTop(j);
+            for (int i = 0; i < boardWidth; i++) {
+                int cell = playfield.getCell(i, j);
+                if (cell != 0) {
+                    blockSprites.drawCell(g, i * block, top, cell);
+                }
+            }
+        }
+        g.dispose();
+        return true;
+    }
+
+    // Opaque image in the format of the screen being drawn to, if any
+    private static BufferedImage createStackImage(Graphics target, int width, int height) {
+        if (target instanceof Graphics2D g2 && g2.getDeviceConfiguration() != null
+                && g2.getDeviceConfiguration().getDevice().getType() != GraphicsDevice.TYPE_IMAGE_BUFFER) {
+            return g2.getDeviceConfiguration().createCompatibleImage(width, height, Transparency.OPAQUE);
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    // Fills device rows top..bottom with the board background and its grid
+    private void drawEmptyBoard(Graphics g, int top, int bottom) {
+        int boardTop = deviceHeight - boardHeight * block;
+
+        // Draw board background
+        g.setColor(BOARD_BACKGROUND_COLOR);
+        g.fillRect(0, top, boardPixels, bottom - top);
+
+        // Draw grid
+        g.setColor(GRID_COLOR);
+        // Vertical lines
+        for (int i = 0; i <= boardWidth; i++) {
+            g.drawLine(i * block, top, i * block, bottom);
+        }
+        // Horizontal lines
+        int first = Math.max(0, (top - boardTop) / block);
+        for (int i = first; i <= boardHeight; i++) {
+            int y = boardTop + i * block;
+            if (y > bottom) {
+                break;
+            }
+            g.drawLine(0, y, boardPixels, y);
+        }
+    }
+
+    private void drawOverlay(Graphics g, int width, int height,
+                             OverlayText mainMsg, OverlayText scoreMsg, OverlayText actionMsg) {
+        g.setColor(OVERLAY_COLOR);
+        g.fillRect(0, 0, width, height);
+
+        g.setColor(Color.WHITE);
+        g.setFont(overlayFont);
+
+        FontMetrics fm = g.getFontMetrics();
+        mainMsg.draw(g, fm, width / 2, height / 2 - overlayLine);
+        scoreMsg.draw(g, fm, width / 2, height / 2);
+        actionMsg.draw(g, fm, width / 2, height / 2 + overlayLine);
+    }
+
+    private void drawPreviewPiece(Graphics g, Shape piece, int x, int y) {
+        int minX = piece.minX();
+        int minY = piece.minY();
+
+        // Center the piece in the preview area
+        int width = piece.width();
+        int height = piece.height();
+        int centerX = x + (4 - width) * previewBlock / 2;
+        int centerY = y + (2 - height) * previewBlock / 2;
+
+        for (int i = 0; i < 4; i++) {
+            int pieceX = centerX + (piece.x(i) - minX) * previewBlock;
+            int pieceY = centerY + (piece.y(i) - minY) * previewBlock;
+            previewSprites.drawBlock(g, pieceX, pieceY, piece.getShape());
+        }
+    }
+
+    // Formats "<prefix><value>" only when the value changes, so repainting an
+    // unchanged HUD does not build new strings.
+    private static class CachedLabel {
+        private final String prefix;
+        private int value = Integer.MIN_VALUE;
+        private String text;
+
+        CachedLabel(String prefix) {
+            this.prefix = prefix;
+        }
+
+        String of(int newValue) {
+            if (text == null || newValue != value) {
+                value = newValue;
+                text = prefix + newValue;
+            }
+            return text;
+        }
+    }
+
+    // Centered overlay line that remembers its measured width in a font.
+    private static class OverlayText {
+        private String text;
+        private Font font;
+        private int width = -1;
+
+        OverlayText(String text) {
+            this.text = text;
+        }
+
+        OverlayText set(String newText) {
+            if (!newText.equals(text)) {
+                text = newText;
+                width = -1;
+            }
+            return this;
+        }
+
+        void draw(Graphics g, FontMetrics fm, int centerX, int y) {
+            if (width < 0 || fm.getFont() != font) {
+                font = fm.getFont();
+                width = fm.stringWidth(text);
+            }
+            g.drawString(text, centerX - width / 2, y);
+        }
+    }
+}
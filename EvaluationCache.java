@@ -0,0 +1,180 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded cache of evaluation results keyed by 64-bit position hash, shared
+// by every thread of a batch or tuning run. Unlike TranspositionTable it is
+// thread-safe, and it evicts with CLOCK instead of overwriting on collision,
+// so positions that keep coming back stay cached.
+//
+// The cache is split into shards, each guarded by its own lock so threads
+// rarely wait for each other. A key maps to one set of WAYS entries in one
+// shard. A hit marks its entry referenced; a miss that needs room sweeps the
+// set's clock hand, clearing marks, until it finds an unreferenced entry to
+// evict. Memory is fixed at construction and nothing allocates after that.
+public class EvaluationCache {
+    static final int WAYS = 8;
+    private static final long EMPTY = 0;
+
+    private static final MetricsRegistry.Counter HITS = MetricsRegistry.getDefault().counter(
+            "tetris_eval_cache_hits_total", "Evaluation cache lookups that found a value");
+    private static final MetricsRegistry.Counter MISSES = MetricsRegistry.getDefault().counter(
+            "tetris_eval_cache_misses_total", "Evaluation cache lookups that found nothing");
+    private static final MetricsRegistry.Counter EVICTIONS = MetricsRegistry.getDefault().counter(
+            "tetris_eval_cache_evictions_total", "Evaluation cache entries replaced to make room");
+
+    private final Shard[] shards;
+    private final int shardBits;
+    private final int setMask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Cache of 2^sizeLog2 entries in 2^shardsLog2 shards
+    public EvaluationCache(int sizeLog2, int shardsLog2) {
+        int setsLog2 = sizeLog2 - shardsLog2 - Integer.numberOfTrailingZeros(WAYS);
+        if (setsLog2 < 0 || shardsLog2 < 0) {
+            throw new IllegalArgumentException("Cannot split 2^" + sizeLog2 + " entries into 2^"
+                    + shardsLog2 + " shards of " + WAYS + "-way sets");
+        }
+        shards = new Shard[1 << shardsLog2];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(1 << setsLog2);
+        }
+        shardBits = shardsLog2;
+        setMask = (1 << setsLog2) - 1;
+    }
+
+    // Enough shards that a thread per core rarely finds its shard locked
+    public EvaluationCache(int sizeLog2) {
+        this(sizeLog2, Math.min(sizeLog2 - 3, 32 - Integer.numberOfLeadingZeros(
+                Runtime.getRuntime().availableProcessors() * 4 - 1)));
+    }
+
+    public int capacity() {
+        return shards.length * (setMask + 1) * WAYS;
+    }
+
+    // Cached value for key, or NaN when it is not in the cache
+    public double get(long key) {
+        key = nonEmpty(key);
+        Shard shard = shardOf(key);
+        int base = setOf(key);
+        synchronized (shard) {
+            for (int i = base; i < base + WAYS; i++) {
+                if (shard.keys[i] == key) {
+                    shard.referenced[i] = true;
+                    hits.increment();
+                    HITS.increment();
+                    return shard.values[i];
+                }
+            }
+        }
+        misses.increment();
+        MISSES.increment();
+        return Double.NaN;
+    }
+
+    public void put(long key, double value) {
+        key = nonEmpty(key);
+        Shard shard = shardOf(key);
+        int base = setOf(key);
+        synchronized (shard) {
+            int free = -1;
+            for (int i = base; i < base + WAYS; i++) {
+                if (shard.keys[i] == key) {
+                    shard.values[i] = value;
+                    return;
+                }
+                if (free < 0 && shard.keys[i] == EMPTY) {
+                    free = i;
+                }
+            }
+            if (free < 0) {
+                free = shard.evict(base);
+                evictions.increment();
+                EVICTIONS.increment();
+            }
+            shard.keys[free] = key;
+            shard.values[free] = value;
+            // New entries start unreferenced, so one-off positions go first
+            shard.referenced[free] = false;
+        }
+    }
+
+    public void clear() {
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                Arrays.fill(shard.keys, EMPTY);
+            }
+        }
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long h = getHits();
+        long total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d entries in %d shards: %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                capacity(), shards.length, getHits(), getMisses(), 100 * getHitRate(), getEvictions());
+    }
+
+    // High bits pick the shard and low bits the set, so the two are independent
+    private Shard shardOf(long key) {
+        return shardBits == 0 ? shards[0] : shards[(int) (key >>> (Long.SIZE - shardBits))];
+    }
+
+    private int setOf(long key) {
+        return ((int) (key ^ (key >>> 32)) & setMask) * WAYS;
+    }
+
+    private static long nonEmpty(long key) {
+        // Zero marks an empty slot
+        return key == EMPTY ? 1 : key;
+    }
+
+    private static class Shard {
+        final long[] keys;
+        final double[] values;
+        final boolean[] referenced;
+        // Clock hand of each set, as an offset into it
+        final byte[] hands;
+
+        Shard(int sets) {
+            keys = new long[sets * WAYS];
+            values = new double[sets * WAYS];
+            referenced = new boolean[sets * WAYS];
+            hands = new byte[sets];
+        }
+
+        // Slot to reuse in the full set starting at base
+        int evict(int base) {
+            int set = base / WAYS;
+            int hand = hands[set];
+            while (referenced[base + hand]) {
+                // Second chance: referenced since the hand last passed
+                referenced[base + hand] = false;
+                hand = (hand + 1) % WAYS;
+            }
+            hands[set] = (byte) ((hand + 1) % WAYS);
+            return base + hand;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+// Scores a board as a weighted sum of features; higher is better. Instances
+// keep a scratch height array, so each thread needs its own.
+public class Evaluator {
+    // Weights for AGGREGATE_HEIGHT, LINES_CLEARED, HOLES and BUMPINESS
+    public static final double[] DEFAULT_WEIGHTS = {-0.510066, 0.760666, -0.35663, -0.184483};
+
+    private final BoardFeature[] features;
+    private final double[] weights;
+    private final int[] heights = new int[Long.SIZE];
+    private final long key;
+
+    public Evaluator() {
+        this(DEFAULT_WEIGHTS);
+    }
+
+    // Weights for the standard features, in StandardFeature order
+    public Evaluator(double... weights) {
+        this(StandardFeature.values(), weights);
+    }
+
+    public Evaluator(BoardFeature[] features, double[] weights) {
+        if (features.length != weights.length) {
+            throw new IllegalArgumentException(
+                    features.length + " features but " + weights.length + " weights");
+        }
+        this.features = features.clone();
+        this.weights = weights.clone();
+        long key = 0;
+        for (int i = 0; i < features.length; i++) {
+            key = Zobrist.mix(key ^ features[i].toString().hashCode());
+            key = Zobrist.mix(key ^ Double.doubleToLongBits(weights[i]));
+        }
+        this.key = key;
+    }
+
+    // Hash of the features and weights, to keep the values of different
+    // evaluators apart in a shared EvaluationCache
+    public long getKey() {
+        return key;
+    }
+
+    public double[] getWeights() {
+        return weights.clone();
+    }
+
+    public double evaluate(Playfield field, int linesCleared) {
+        field.columnHeights(heights);
+        double score = 0;
+        for (int i = 0; i < features.length; i++) {
+            score += weights[i] * features[i].measure(field, heights, linesCleared);
+        }
+        return score;
+    }
+}
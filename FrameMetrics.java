@@ -0,0 +1,108 @@
+import java.util.Arrays;
+
+// Frame and logic timing for GameLoop. The loop thread records samples; the
+// percentiles and rates are recomputed once per second and published through
+// volatile fields, so any thread can read them without locking.
+public class FrameMetrics {
+    private static final int WINDOW = 512;
+    private static final long PUBLISH_INTERVAL_NANOS = 1_000_000_000L;
+
+    // Loop thread only
+    private final long[] frameNanos = new long[WINDOW];
+    private final long[] sorted = new long[WINDOW];
+    private int samples = 0;
+    private int nextSample = 0;
+    private long windowStart = -1;
+    private int framesInWindow = 0;
+    private int ticksInWindow = 0;
+    private long droppedFrames = 0;
+
+    private volatile double frameTimeP50Millis;
+    private volatile double frameTimeP99Millis;
+    private volatile double framesPerSecond;
+    private volatile double logicTicksPerSecond;
+    private volatile long publishedDroppedFrames;
+
+    // Time from an input happening to the logic tick that applied it
+    private final LatencyMetrics inputLatency = new LatencyMetrics();
+
+    // Records one rendered frame. intervalNanos is the time since the previous
+    // frame started; every whole target interval beyond the first counts as a
+    // dropped frame.
+    void recordFrame(long now, long intervalNanos, long targetNanos) {
+        frameNanos[nextSample] = intervalNanos;
+        nextSample = (nextSample + 1) % WINDOW;
+        samples = Math.min(samples + 1, WINDOW);
+        framesInWindow++;
+        if (targetNanos > 0 && intervalNanos > targetNanos + targetNanos / 2) {
+            droppedFrames += intervalNanos / targetNanos - 1;
+        }
+        publishIfDue(now);
+    }
+
+    void recordTick() {
+        ticksInWindow++;
+    }
+
+    private void publishIfDue(long now) {
+        if (windowStart < 0) {
+            windowStart = now;
+            return;
+        }
+        long elapsed = now - windowStart;
+        if (elapsed < PUBLISH_INTERVAL_NANOS) {
+            return;
+        }
+
+        System.arraycopy(frameNanos, 0, sorted, 0, samples);
+        Arrays.sort(sorted, 0, samples);
+        frameTimeP50Millis = percentile(0.50) / 1e6;
+        frameTimeP99Millis = percentile(0.99) / 1e6;
+        framesPerSecond = framesInWindow * 1e9 / elapsed;
+        logicTicksPerSecond = ticksInWindow * 1e9 / elapsed;
+        publishedDroppedFrames = droppedFrames;
+
+        windowStart = now;
+        framesInWindow = 0;
+        ticksInWindow = 0;
+    }
+
+    private long percentile(double p) {
+        if (samples == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * samples) - 1;
+        return sorted[Math.max(0, Math.min(index, samples - 1))];
+    }
+
+    public double getFrameTimeP50Millis() {
+        return frameTimeP50Millis;
+    }
+
+    public double getFrameTimeP99Millis() {
+        return frameTimeP99Millis;
+    }
+
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    public double getLogicTicksPerSecond() {
+        return logicTicksPerSecond;
+    }
+
+    public long getDroppedFrames() {
+        return publishedDroppedFrames;
+    }
+
+    public LatencyMetrics getInputLatency() {
+        return inputLatency;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.0f fps, frame p50 %.2f ms, p99 %.2f ms, %.0f ticks/s, %d dropped, input p99 %.2f ms",
+                framesPerSecond, frameTimeP50Millis, frameTimeP99Millis,
+                logicTicksPerSecond, publishedDroppedFrames, inputLatency.getP99Millis());
+    }
+}
@@ -0,0 +1,104 @@
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.BufferStrategy;
+
+// Active-rendering alternative to Board. A GameLoop thread runs the logic and
+// paints each frame straight into this canvas's BufferStrategy; Swing's repaint
+// machinery is not involved.
+public class GameCanvas extends Canvas {
+    private final GameEngine engine;
+    private final BoardRenderer renderer;
+    private final GameLoop loop;
+
+    public GameCanvas() {
+        this(new GameEngine(), BoardRenderer.DEFAULT_BLOCK_SIZE, GameLoop.DEFAULT_FPS);
+    }
+
+    public GameCanvas(GameEngine engine, int blockSize, int framesPerSecond) {
+        this.engine = engine;
+        renderer = new BoardRenderer(engine.getWidth(), engine.getHeight(), blockSize);
+        setFocusable(true);
+        setIgnoreRepaint(true);
+        setPreferredSize(renderer.getPreferredSize());
+        addPropertyChangeListener("graphicsConfiguration",
+                e -> renderer.setDeviceScale(BoardRenderer.deviceScale(getGraphicsConfiguration())));
+        loop = new GameLoop(engine, this::render, framesPerSecond);
+        addKeyListener(new TAdapter());
+    }
+
+    public GameLoop getLoop() {
+        return loop;
+    }
+
+    public void start() {
+        loop.start();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        renderer.setDeviceScale(BoardRenderer.deviceScale(getGraphicsConfiguration()));
+        createBufferStrategy(2);
+    }
+
+    // Called on the loop thread after each batch of logic ticks
+    private void render() {
+        BufferStrategy strategy = getBufferStrategy();
+        if (strategy == null || !isDisplayable()) {
+            return;
+        }
+
+        try {
+            do {
+                do {
+                    Graphics g = strategy.getDrawGraphics();
+                    try {
+                        renderer.paint(g, engine, getWidth(), getHeight(), loop.isPaused());
+                    } finally {
+                        g.dispose();
+                    }
+                } while (strategy.contentsRestored());
+                strategy.show();
+            } while (strategy.contentsLost());
+        } catch (IllegalStateException e) {
+            // The peer went away, e.g. while toggling full screen; skip this frame
+            return;
+        }
+        Toolkit.getDefaultToolkit().sync();
+    }
+
+    private class TAdapter extends KeyAdapter {
+        @Override
+        public void keyPressed(KeyEvent e) {
+            int keycode = e.getKeyCode();
+
+            if (engine.isGameOver()) {
+                if (keycode == KeyEvent.VK_R) {
+                    loop.requestRestart();
+                }
+                return;
+            }
+
+            if (keycode == KeyEvent.VK_ESCAPE) {
+                loop.togglePause();
+                return;
+            }
+
+            if (keycode == KeyEvent.VK_DOWN) {
+                loop.setSoftDrop(true);
+            }
+
+            GameInput input = Board.inputForKey(keycode);
+            if (input != null) {
+                loop.submit(input, Board.eventNanos(e));
+            }
+        }
+
+        @Override
+        public void keyReleased(KeyEvent e) {
+            if (e.getKeyCode() == KeyEvent.VK_DOWN) {
+                loop.setSoftDrop(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,548 @@
+import java.util.Arrays;
+
+// Headless game state and rules. Board wraps an instance and only adds the
+// Swing timer, keyboard handling and painting, so the same rules can run on
+// machines without a display and as fast as the caller drives them.
+//
+// The engine never reads the clock itself: every call that can start or
+// check the lock delay takes the current time in milliseconds.
+public class GameEngine {
+    // Default board size; other sizes can be passed to the constructor
+    public static final int BOARD_WIDTH = 10;
+    public static final int BOARD_HEIGHT = 20;
+    // Longest piece, so every piece fits at its spawn point
+    public static final int MIN_BOARD_SIZE = 4;
+    public static final int NUM_NEXT_PIECES = 3;
+    public static final int NORMAL_FALL_SPEED = 400;
+    public static final int MIN_FALL_SPEED = 50;
+    public static final int LOCK_DELAY = 1000;
+    public static final int LINES_PER_LEVEL = 10;
+
+    private static final MetricsRegistry.Counter MOVES = MetricsRegistry.getDefault()
+            .counter("tetris_moves_total", "Inputs that moved, rotated, dropped or held the piece");
+    private static final MetricsRegistry.Counter PIECES = MetricsRegistry.getDefault()
+            .counter("tetris_pieces_locked_total", "Pieces locked into the stack");
+    private static final MetricsRegistry.Counter LINES = MetricsRegistry.getDefault()
+            .counter("tetris_lines_cleared_total", "Lines cleared");
+
+    private boolean isStarted = false;
+    private boolean isGameOver = false;
+    private int currentX = 0;
+    private int currentY = 0;
+    private Shape currentPiece;
+    private Shape holdPiece;
+    private boolean canHold = true;
+    private final PieceQueue nextPieces;
+    private final Playfield board;
+    private final int width;
+    private final int height;
+    private long lastMoveDownTime;
+    private boolean isAtBottom = false;
+    private int score = 0;
+    private int level = 1;
+    private int linesCleared = 0;
+    private int piecesPlaced = 0;
+    // Locked pieces by shape ordinal
+    private final int[] pieceCounts = new int[Shape.Tetrominoes.values().length];
+    private long seed;
+    // Picks the seed of each game started without an explicit one
+    private final SeededRandom seeds;
+    private ReplayRecorder recorder;
+    private TelemetryRecorder.Stream telemetry;
+    // Where the most recent piece locked
+    private Shape lastLockedPiece;
+    private int lastLockedX;
+    private int lastLockedY;
+
+    public GameEngine() {
+        this(System.nanoTime());
+    }
+
+    // Engine whose piece sequences are fully determined by the seed.
+    public GameEngine(long seed) {
+        this(seed, new WeightedRandomizer(seed));
+    }
+
+    public GameEngine(long seed, Randomizer randomizer) {
+        this(seed, randomizer, BOARD_WIDTH, BOARD_HEIGHT);
+    }
+
+    // Engine for a width x height board. Width can be up to 64 columns, the
+    // size of a Playfield row mask; height is unbounded.
+    public GameEngine(long seed, Randomizer randomizer, int width, int height) {
+        if (width < MIN_BOARD_SIZE || height < MIN_BOARD_SIZE) {
+            throw new IllegalArgumentException("board must be at least " + MIN_BOARD_SIZE + "x" + MIN_BOARD_SIZE
+                    + ": " + width + "x" + height);
+        }
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+        seeds = new SeededRandom(seed);
+        currentPiece = Shape.of(Shape.Tetrominoes.NoShape);
+        board = new Playfield(width, height);
+        nextPieces = new PieceQueue(randomizer);
+    }
+
+    // Resets the whole game with a fresh seed and spawns the first piece.
+    public void start(long now) {
+        start(now, seeds.nextLong());
+    }
+
+    // Resets the whole game and spawns the first piece. The seed fully
+    // determines the piece sequence, so the same seed and inputs replay the
+    // same game, and one engine can play many seeded games without being
+    // reallocated.
+    public void start(long now, long seed) {
+        this.seed = seed;
+        nextPieces.reset(seed);
+        isStarted = true;
+        isGameOver = false;
+        isAtBottom = false;
+        score = 0;
+        level = 1;
+        linesCleared = 0;
+        piecesPlaced = 0;
+        Arrays.fill(pieceCounts, 0);
+        board.clear();
+        holdPiece = null;
+        canHold = true;
+        if (telemetry != null) {
+            telemetry.started(now, seed);
+        }
+        newPiece(now);
+    }
+
+    // Applies one player action. Returns true if the game state changed.
+    public boolean apply(GameInput input, long now) {
+        if (recorder != null) {
+            recorder.recordInput(input, now);
+        }
+        if (!isStarted || isGameOver || currentPiece.getShape() == Shape.Tetrominoes.NoShape) {
+            return false;
+        }
+
+        boolean changed = switch (input) {
+            case MOVE_LEFT -> tryMove(currentPiece, currentX - 1, currentY, now);
+            case MOVE_RIGHT -> tryMove(currentPiece, currentX + 1, currentY, now);
+            case ROTATE -> tryMove(currentPiece.rotateLeft(), currentX, currentY, now);
+            case SOFT_DROP -> oneLineDown(now);
+            case HARD_DROP -> {
+                dropDown(now);
+                yield true;
+            }
+            case HOLD -> holdCurrentPiece(now);
+        };
+        if (changed) {
+            MOVES.increment();
+        }
+        return changed;
+    }
+
+    // Runs one gravity step: moves the piece down a row, or locks it once it
+    // has rested on the stack for longer than LOCK_DELAY.
+    public boolean step(long now) {
+        if (recorder != null) {
+            recorder.recordStep(now);
+        }
+        if (!isStarted || isGameOver) {
+            return false;
+        }
+
+        if (isAtBottom) {
+            if (now - lastMoveDownTime > LOCK_DELAY) {
+                pieceDropped(now);
+                return true;
+            }
+            return false;
+        }
+        return oneLineDown(now);
+    }
+
+    // Records every following apply and step call, or stops recording when
+    // recorder is null. Calls that change nothing are recorded too, since they
+    // still move the clock a replay is played against.
+    public void setRecorder(ReplayRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    // Sends spawn, hold, lock, line clear, level and game over events to
+    // stream, or stops when it is null
+    public void setTelemetry(TelemetryRecorder.Stream stream) {
+        this.telemetry = stream;
+    }
+
+    // New GameState holding this engine's current state
+    public GameState snapshot() {
+        GameState state = new GameState(width, height);
+        saveState(state);
+        return state;
+    }
+
+    // Copies the whole game state into state, which must be for the same
+    // board size. Costs one copy of the rows up to the stack top.
+    public void saveState(GameState state) {
+        state.checkSize(board);
+        state.field.copyFrom(board);
+        state.randomizer = nextPieces.getRandomizer().name();
+        state.currentPiece = currentPiece;
+        state.currentX = currentX;
+        state.currentY = currentY;
+        state.holdPiece = holdPiece;
+        state.canHold = canHold;
+        state.isStarted = isStarted;
+        state.isGameOver = isGameOver;
+        state.isAtBottom = isAtBottom;
+        state.lastMoveDownTime = lastMoveDownTime;
+        state.score = score;
+        state.level = level;
+        state.linesCleared = linesCleared;
+        state.piecesPlaced = piecesPlaced;
+        state.lastLockedPiece = lastLockedPiece;
+        state.lastLockedX = lastLockedX;
+        state.lastLockedY = lastLockedY;
+        System.arraycopy(pieceCounts, 0, state.pieceCounts, 0, pieceCounts.length);
+        state.seed = seed;
+        state.seedsState = seeds.getState();
+        state.queueSize = nextPieces.saveTo(state.queue);
+        state.randomState = nextPieces.getRandomizer().getRandomState();
+        state.packedRandomizerState = nextPieces.getRandomizer().getPackedState();
+    }
+
+    // Puts the engine back into a state saved from an engine with the same
+    // board size and kind of randomizer. The game then continues exactly as
+    // it would have from the saved point. A recorder attached to the engine
+    // does not see the jump, so restoring while recording breaks the replay.
+    public void restoreState(GameState state) {
+        state.checkSize(board);
+        if (!state.randomizer.equals(nextPieces.getRandomizer().name())) {
+            throw new IllegalArgumentException("state uses the " + state.randomizer + " randomizer, engine uses "
+                    + nextPieces.getRandomizer().name());
+        }
+        board.copyFrom(state.field);
+        currentPiece = state.currentPiece;
+        currentX = state.currentX;
+        currentY = state.currentY;
+        holdPiece = state.holdPiece;
+        canHold = state.canHold;
+        isStarted = state.isStarted;
+        isGameOver = state.isGameOver;
+        isAtBottom = state.isAtBottom;
+        lastMoveDownTime = state.lastMoveDownTime;
+        score = state.score;
+        level = state.level;
+        linesCleared = state.linesCleared;
+        piecesPlaced = state.piecesPlaced;
+        lastLockedPiece = state.lastLockedPiece;
+        lastLockedX = state.lastLockedX;
+        lastLockedY = state.lastLockedY;
+        System.arraycopy(state.pieceCounts, 0, pieceCounts, 0, pieceCounts.length);
+        seed = state.seed;
+        seeds.setState(state.seedsState);
+        nextPieces.restore(state.queue, state.queueSize);
+        nextPieces.getRandomizer().setState(state.randomState, state.packedRandomizerState);
+    }
+
+    public int findGhostPieceY() {
+        return currentY - board.dropDistance(currentPiece, currentX, currentY);
+    }
+
+    public boolean canMoveTo(Shape piece, int newX, int newY) {
+        return board.canPlace(piece, newX, newY);
+    }
+
+    private void newPiece(long now) {
+        GameEvents.PieceSpawn event = GameEvents.isRecording() ? new GameEvents.PieceSpawn() : null;
+        if (event != null) {
+            event.begin();
+        }
+        currentPiece = nextPieces.poll();
+
+        currentX = width / 2;
+        currentY = currentPiece.spawnY(height);
+
+        Shape.Tetrominoes shape = currentPiece.getShape();
+        if (!tryMove(currentPiece, currentX, currentY - 1, now)) {
+            currentPiece = Shape.of(Shape.Tetrominoes.NoShape);
+            isGameOver = true;
+        }
+        if (telemetry != null) {
+            if (isGameOver) {
+                telemetry.gameOver(now, score);
+            } else {
+                telemetry.spawned(now, currentPiece, currentX, currentY);
+            }
+        }
+        if (event != null && event.shouldCommit()) {
+            event.shape = shape.name();
+            event.gameOver = isGameOver;
+            event.commit();
+        }
+    }
+
+    private boolean oneLineDown(long now) {
+        if (tryMove(currentPiece, currentX, currentY - 1, now)) {
+            return true;
+        }
+        if (!isAtBottom) {
+            isAtBottom = true;
+            lastMoveDownTime = now;
+        }
+        return false;
+    }
+
+    private void pieceDropped(long now) {
+        GameEvents.PieceLock event = GameEvents.isRecording() ? new GameEvents.PieceLock() : null;
+        if (event != null) {
+            event.begin();
+        }
+        Shape.Tetrominoes shape = currentPiece.getShape();
+        board.lock(currentPiece, currentX, currentY);
+        if (telemetry != null) {
+            telemetry.locked(now, currentPiece, currentX, currentY);
+        }
+        lastLockedPiece = currentPiece;
+        lastLockedX = currentX;
+        lastLockedY = currentY;
+        piecesPlaced++;
+        pieceCounts[shape.ordinal()]++;
+        PIECES.increment();
+
+        removeFullLines();
+        canHold = true;
+        isAtBottom = false;
+        newPiece(now);
+        if (event != null && event.shouldCommit()) {
+            event.shape = shape.name();
+            event.stackHeight = board.getStackHeight();
+            event.piecesPlaced = piecesPlaced;
+            event.commit();
+        }
+    }
+
+    private void removeFullLines() {
+        GameEvents.LineClear event = GameEvents.isRecording() ? new GameEvents.LineClear() : null;
+        if (event != null) {
+            event.begin();
+        }
+        int lines = board.clearFullLines();
+        updateScore(lines);
+        if (lines > 0) {
+            LINES.add(lines);
+            if (event != null && event.shouldCommit()) {
+                event.lines = lines;
+                event.level = level;
+                event.commit();
+            }
+        }
+    }
+
+    private void updateScore(int numLines) {
+        if (numLines == 0) return;
+
+        int points = linePoints(numLines, level);
+
+        score += points;
+        linesCleared += numLines;
+
+        // Level up every LINES_PER_LEVEL lines
+        int previousLevel = level;
+        level = levelFor(linesCleared);
+        if (telemetry != null) {
+            telemetry.scored(numLines, points);
+            if (level != previousLevel) {
+                telemetry.levelChanged(level);
+            }
+        }
+    }
+
+    // Score calculation based on number of lines cleared at once
+    static int linePoints(int numLines, int level) {
+        return switch (numLines) {
+            case 1 -> 100 * level;   // Single
+            case 2 -> 300 * level;   // Double
+            case 3 -> 500 * level;   // Triple
+            case 4 -> 800 * level;   // Tetris
+            default -> 0;
+        };
+    }
+
+    // Level after clearing linesCleared lines in total
+    static int levelFor(int linesCleared) {
+        return linesCleared / LINES_PER_LEVEL + 1;
+    }
+
+    // Pushes lines rows of garbage with a gap at column hole up under the
+    // stack, as sent by an opponent in versus play. The current piece is
+    // pushed up with the stack where it would overlap it; the game is over
+    // when the stack or the piece goes out of the top. Garbage is not
+    // recorded, so a game that receives it cannot be replayed.
+    public boolean addGarbage(int lines, int hole, long now) {
+        if (!isStarted || isGameOver || lines <= 0) {
+            return false;
+        }
+        boolean fits = board.addGarbage(lines, hole);
+        if (fits && currentPiece.getShape() != Shape.Tetrominoes.NoShape) {
+            int y = currentY;
+            while (!canMoveTo(currentPiece, currentX, y) && y < currentY + lines) {
+                y++;
+            }
+            fits = canMoveTo(currentPiece, currentX, y);
+            currentY = y;
+        }
+        if (!fits) {
+            currentPiece = Shape.of(Shape.Tetrominoes.NoShape);
+            isGameOver = true;
+        }
+        return true;
+    }
+
+    private boolean tryMove(Shape newPiece, int newX, int newY, long now) {
+        if (!canMoveTo(newPiece, newX, newY)) {
+            return false;
+        }
+
+        currentPiece = newPiece;
+        currentX = newX;
+        currentY = newY;
+
+        // Reset lock delay if piece is moved horizontally or rotated while at bottom
+        if (isAtBottom && !canMoveTo(currentPiece, currentX, currentY - 1)) {
+            lastMoveDownTime = now;
+        }
+        return true;
+    }
+
+    private void dropDown(long now) {
+        currentY -= board.dropDistance(currentPiece, currentX, currentY);
+        isAtBottom = true;
+        lastMoveDownTime = now;
+        pieceDropped(now);
+    }
+
+    private boolean holdCurrentPiece(long now) {
+        if (!canHold) return false;
+
+        Shape tempPiece = Shape.of(currentPiece.getShape());
+
+        if (holdPiece == null) {
+            holdPiece = tempPiece;
+            newPiece(now);
+        } else {
+            Shape temp = holdPiece;
+            holdPiece = tempPiece;
+            currentPiece = temp;
+            currentX = width / 2;
+            currentY = currentPiece.spawnY(height);
+        }
+        if (telemetry != null) {
+            telemetry.held(now, holdPiece, currentPiece);
+        }
+
+        canHold = false;
+        return true;
+    }
+
+    // Gravity delay for the current level, in milliseconds.
+    public int getFallDelay() {
+        return Math.max(NORMAL_FALL_SPEED - ((level - 1) * 50), MIN_FALL_SPEED);
+    }
+
+    public boolean isStarted() {
+        return isStarted;
+    }
+
+    public boolean isGameOver() {
+        return isGameOver;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getCell(int x, int y) {
+        return board.getCell(x, y);
+    }
+
+    public Playfield getPlayfield() {
+        return board;
+    }
+
+    public Shape getCurrentPiece() {
+        return currentPiece;
+    }
+
+    // Hash of the locked stack, the current piece's shape and hold, kept up
+    // to date as pieces lock and lines clear, so it costs a few XORs
+    public long getPositionHash() {
+        return board.getHash()
+                ^ (currentPiece == null ? 0 : Zobrist.piece(0, currentPiece.getShape()))
+                ^ (holdPiece == null ? 0 : Zobrist.piece(1, holdPiece.getShape()));
+    }
+
+    public int getCurrentX() {
+        return currentX;
+    }
+
+    public int getCurrentY() {
+        return currentY;
+    }
+
+    public Shape getHoldPiece() {
+        return holdPiece;
+    }
+
+    public boolean canHold() {
+        return canHold;
+    }
+
+    public Shape getNextPiece(int index) {
+        return nextPieces.peek(index);
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getLinesCleared() {
+        return linesCleared;
+    }
+
+    // Seed of the current game
+    public long getSeed() {
+        return seed;
+    }
+
+    // Number of pieces of the given shape locked this game
+    public int getPieceCount(Shape.Tetrominoes shape) {
+        return pieceCounts[shape.ordinal()];
+    }
+
+    public Randomizer getRandomizer() {
+        return nextPieces.getRandomizer();
+    }
+
+    // The most recently locked piece and where it locked, null before the first lock
+    public Shape getLastLockedPiece() {
+        return lastLockedPiece;
+    }
+
+    public int getLastLockedX() {
+        return lastLockedX;
+    }
+
+    public int getLastLockedY() {
+        return lastLockedY;
+    }
+
+    public int getPiecesPlaced() {
+        return piecesPlaced;
+    }
+}
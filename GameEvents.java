@@ -0,0 +1,96 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// JDK Flight Recorder events for the game's hot paths. Record a session with
+//   java -XX:StartFlightRecording=filename=tetris.jfr TetrisGame
+// and open it in JDK Mission Control, or print it with
+//   jfr print --events tetris.* tetris.jfr
+//
+// Call sites only create an event once Flight Recorder has been started,
+// from the command line or later with jcmd. Loading the first event class
+// initializes JFR's event machinery, which takes hundreds of milliseconds, so
+// normal play and short BatchRunner runs must not touch these classes at all.
+// Stack traces are off: at these rates they would dominate the recording.
+final class GameEvents {
+    private GameEvents() {
+    }
+
+    // Whether Flight Recorder is running in this JVM. Reads one static field.
+    static boolean isRecording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    @Name("tetris.PieceSpawn")
+    @Label("Piece Spawn")
+    @Category("Tetris")
+    @Description("A new piece entered the board (GameEngine.newPiece)")
+    @StackTrace(false)
+    static class PieceSpawn extends Event {
+        @Label("Shape")
+        String shape;
+
+        @Label("Game Over")
+        @Description("The piece did not fit, ending the game")
+        boolean gameOver;
+    }
+
+    @Name("tetris.PieceLock")
+    @Label("Piece Lock")
+    @Category("Tetris")
+    @Description("The current piece locked into the stack, including the line clear and next spawn "
+            + "(GameEngine.pieceDropped)")
+    @StackTrace(false)
+    static class PieceLock extends Event {
+        @Label("Shape")
+        String shape;
+
+        @Label("Stack Height")
+        int stackHeight;
+
+        @Label("Pieces Placed")
+        int piecesPlaced;
+    }
+
+    @Name("tetris.LineClear")
+    @Label("Line Clear")
+    @Category("Tetris")
+    @Description("Full lines were removed from the stack (GameEngine.removeFullLines)")
+    @StackTrace(false)
+    static class LineClear extends Event {
+        @Label("Lines")
+        int lines;
+
+        @Label("Level")
+        int level;
+    }
+
+    @Name("tetris.Paint")
+    @Label("Paint")
+    @Category("Tetris")
+    @Description("One frame drawn by BoardRenderer (Board.paintComponent or GameCanvas.render)")
+    @StackTrace(false)
+    static class Paint extends Event {
+        @Label("Stack Redrawn")
+        @Description("The cached stack image was stale and had to be redrawn")
+        boolean stackRedrawn;
+    }
+
+    @Name("tetris.GameCycle")
+    @Label("Game Cycle")
+    @Category("Tetris")
+    @Description("One gravity tick with the inputs drained before it (Board.doGameCycle or GameLoop tick)")
+    @StackTrace(false)
+    static class GameCycle extends Event {
+        @Label("Inputs")
+        int inputs;
+
+        @Label("Changed")
+        @Description("The tick moved or locked the piece")
+        boolean changed;
+    }
+}
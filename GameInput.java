@@ -0,0 +1,5 @@
+// Player actions understood by GameEngine. These mirror the keys handled by
+// Board.TAdapter, so bots and the keyboard drive the game the same way.
+public enum GameInput {
+    MOVE_LEFT, MOVE_RIGHT, ROTATE, SOFT_DROP, HARD_DROP, HOLD
+}
@@ -0,0 +1,183 @@
+// Drives a GameEngine from a dedicated thread instead of a Swing Timer. Logic
+// runs on a fixed System.nanoTime timestep: each tick drains the InputQueue in
+// order and accumulates gravity until a full fall delay has passed. After the
+// ticks that are due, a frame is rendered through the supplied callback
+// whenever one is due. The thread wakes for every tick, not only for frames,
+// so input latency is bounded by the logic step rather than the frame rate.
+//
+// The engine's clock is the tick count times the timestep, so lock delay and
+// gravity do not depend on timer jitter or on how long rendering took.
+public class GameLoop implements Runnable {
+    public static final int LOGIC_HZ = 120;
+    public static final int DEFAULT_FPS = 60;
+    private static final long LOGIC_STEP_NANOS = 1_000_000_000L / LOGIC_HZ;
+    private static final long MAX_CATCH_UP_NANOS = 250_000_000L;
+    private static final int SOFT_DROP_SPEED = 50;
+    private static final int INPUT_QUEUE_CAPACITY = 64;
+    private static final MetricsRegistry.Counter GAME_CYCLES = MetricsRegistry.getDefault()
+            .counter("tetris_game_cycles_total", "Gravity ticks run");
+
+    private final GameEngine engine;
+    private final Runnable renderer;
+    private final long frameNanos;
+    private final FrameMetrics metrics = new FrameMetrics();
+    private final InputQueue inputs = new InputQueue(INPUT_QUEUE_CAPACITY);
+    private final InputQueue.Handler applyInput = this::applyInput;
+
+    private volatile boolean running = false;
+    private volatile boolean isPaused = false;
+    private volatile boolean isSoftDropping = false;
+    private volatile boolean restartRequested = false;
+    private Thread thread;
+
+    // Loop thread only
+    private long logicNanos = 0;
+    private long gravityNanos = 0;
+
+    public GameLoop(GameEngine engine, Runnable renderer, int framesPerSecond) {
+        this.engine = engine;
+        this.renderer = renderer;
+        this.frameNanos = 1_000_000_000L / framesPerSecond;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "game-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    public FrameMetrics getMetrics() {
+        return metrics;
+    }
+
+    public GameEngine getEngine() {
+        return engine;
+    }
+
+    // Queues an input for the next logic tick. All inputs must come from one
+    // thread, normally the EDT. Returns false if the queue was full.
+    public boolean submit(GameInput input) {
+        return submit(input, System.nanoTime());
+    }
+
+    // As submit(input), for an input that happened at nanos (System.nanoTime()),
+    // so the measured latency includes the wait before it was submitted.
+    public boolean submit(GameInput input, long nanos) {
+        return inputs.offer(input, nanos);
+    }
+
+    public void setSoftDrop(boolean softDrop) {
+        isSoftDropping = softDrop;
+    }
+
+    public void togglePause() {
+        isPaused = !isPaused;
+    }
+
+    public boolean isPaused() {
+        return isPaused;
+    }
+
+    public void requestRestart() {
+        restartRequested = true;
+    }
+
+    @Override
+    public void run() {
+        engine.start(now());
+        long nextTick = System.nanoTime() + LOGIC_STEP_NANOS;
+        long nextFrame = nextTick;
+        long lastFrame = nextTick - LOGIC_STEP_NANOS;
+
+        while (running) {
+            long now = System.nanoTime();
+            // After a long stall, drop the backlog instead of racing through it
+            if (now - nextTick > MAX_CATCH_UP_NANOS) {
+                nextTick = now - MAX_CATCH_UP_NANOS;
+            }
+            while (now - nextTick >= 0) {
+                tick();
+                nextTick += LOGIC_STEP_NANOS;
+            }
+
+            if (now - nextFrame >= 0) {
+                renderer.run();
+                metrics.recordFrame(now, now - lastFrame, frameNanos);
+                lastFrame = now;
+                nextFrame = Math.max(nextFrame + frameNanos, now + frameNanos / 2);
+            }
+
+            // Wake for whichever is due first, so queued inputs wait at most
+            // one logic step rather than a whole frame
+            long sleepNanos = Math.min(nextTick, nextFrame) - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void tick() {
+        metrics.recordTick();
+        if (restartRequested) {
+            restartRequested = false;
+            inputs.clear();
+            gravityNanos = 0;
+            engine.start(now());
+        }
+        if (isPaused || engine.isGameOver()) {
+            inputs.clear();
+            return;
+        }
+
+        GameEvents.GameCycle event = GameEvents.isRecording() ? new GameEvents.GameCycle() : null;
+        if (event != null) {
+            event.begin();
+        }
+        logicNanos += LOGIC_STEP_NANOS;
+        long now = now();
+
+        int drained = inputs.drain(applyInput);
+
+        gravityNanos += LOGIC_STEP_NANOS;
+        long fallNanos = (isSoftDropping ? SOFT_DROP_SPEED : engine.getFallDelay()) * 1_000_000L;
+        boolean changed = false;
+        while (gravityNanos >= fallNanos) {
+            gravityNanos -= fallNanos;
+            changed |= engine.step(now);
+            GAME_CYCLES.increment();
+        }
+        if (event != null && event.shouldCommit()) {
+            event.inputs = drained;
+            event.changed = changed;
+            event.commit();
+        }
+    }
+
+    private void applyInput(GameInput input, long offeredNanos) {
+        engine.apply(input, now());
+        long applied = System.nanoTime();
+        metrics.getInputLatency().record(applied - offeredNanos, applied);
+    }
+
+    // Logic clock in milliseconds, as the engine expects
+    private long now() {
+        return logicNanos / 1_000_000;
+    }
+}
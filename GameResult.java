@@ -0,0 +1,3 @@
+// Outcome of one finished headless game.
+public record GameResult(long seed, int score, int lines, int level, int pieces) {
+}
@@ -0,0 +1,98 @@
+// Everything that determines how a GameEngine plays on: the locked stack,
+// the current piece and its position, hold, the piece queue and randomizer
+// state, score, level, lines, lock delay and the seed source. Save one with
+// GameEngine.saveState and put it back with restoreState, for undo,
+// save/resume, or forking a position many times in a search or rollout.
+//
+// A GameState is allocated once per board size and then reused: saving and
+// restoring copy values and only the rows up to the stack top, and never
+// allocate.
+public class GameState {
+    final Playfield field;
+    String randomizer;
+    Shape currentPiece;
+    int currentX;
+    int currentY;
+    Shape holdPiece;
+    boolean canHold;
+    boolean isStarted;
+    boolean isGameOver;
+    boolean isAtBottom;
+    long lastMoveDownTime;
+    int score;
+    int level;
+    int linesCleared;
+    int piecesPlaced;
+    Shape lastLockedPiece;
+    int lastLockedX;
+    int lastLockedY;
+    final int[] pieceCounts = new int[Shape.Tetrominoes.values().length];
+    long seed;
+    long seedsState;
+    final Shape.Tetrominoes[] queue = new Shape.Tetrominoes[PieceQueue.CAPACITY];
+    int queueSize;
+    long randomState;
+    long packedRandomizerState;
+
+    // Empty state for a width x height board, to be filled by saveState
+    public GameState(int width, int height) {
+        field = new Playfield(width, height);
+    }
+
+    // Makes this state an exact copy of other, which must be for the same board size.
+    public void copyFrom(GameState other) {
+        checkSize(other.field);
+        field.copyFrom(other.field);
+        randomizer = other.randomizer;
+        currentPiece = other.currentPiece;
+        currentX = other.currentX;
+        currentY = other.currentY;
+        holdPiece = other.holdPiece;
+        canHold = other.canHold;
+        isStarted = other.isStarted;
+        isGameOver = other.isGameOver;
+        isAtBottom = other.isAtBottom;
+        lastMoveDownTime = other.lastMoveDownTime;
+        score = other.score;
+        level = other.level;
+        linesCleared = other.linesCleared;
+        piecesPlaced = other.piecesPlaced;
+        lastLockedPiece = other.lastLockedPiece;
+        lastLockedX = other.lastLockedX;
+        lastLockedY = other.lastLockedY;
+        System.arraycopy(other.pieceCounts, 0, pieceCounts, 0, pieceCounts.length);
+        seed = other.seed;
+        seedsState = other.seedsState;
+        System.arraycopy(other.queue, 0, queue, 0, other.queueSize);
+        queueSize = other.queueSize;
+        randomState = other.randomState;
+        packedRandomizerState = other.packedRandomizerState;
+    }
+
+    void checkSize(Playfield other) {
+        if (other.getWidth() != field.getWidth() || other.getHeight() != field.getHeight()) {
+            throw new IllegalArgumentException("board is " + other.getWidth() + "x" + other.getHeight()
+                    + ", state is for " + field.getWidth() + "x" + field.getHeight());
+        }
+    }
+
+    public int getWidth() {
+        return field.getWidth();
+    }
+
+    public int getHeight() {
+        return field.getHeight();
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getPiecesPlaced() {
+        return piecesPlaced;
+    }
+
+    public boolean isGameOver() {
+        return isGameOver;
+    }
+}
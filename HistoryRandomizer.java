@@ -0,0 +1,92 @@
+// History-based randomizer in the style of TGM: remembers the last four
+// pieces and rerolls up to ROLLS times while the candidate is among them.
+// The first piece is never an S, Z or O.
+public class HistoryRandomizer implements Randomizer {
+    private static final int HISTORY_SIZE = 4;
+    private static final int ROLLS = 6;
+
+    private final SeededRandom random;
+    private final Shape.Tetrominoes[] history = new Shape.Tetrominoes[HISTORY_SIZE];
+    private int oldest;
+    private boolean isFirst;
+
+    public HistoryRandomizer(long seed) {
+        random = new SeededRandom(seed);
+        reset(seed);
+    }
+
+    @Override
+    public String name() {
+        return "history";
+    }
+
+    @Override
+    public void reset(long seed) {
+        random.setState(seed);
+        history[0] = Shape.Tetrominoes.ZShape;
+        history[1] = Shape.Tetrominoes.SShape;
+        history[2] = Shape.Tetrominoes.ZShape;
+        history[3] = Shape.Tetrominoes.SShape;
+        oldest = 0;
+        isFirst = true;
+    }
+
+    @Override
+    public long getRandomState() {
+        return random.getState();
+    }
+
+    // Three bits per history slot, then the oldest slot and the first flag
+    @Override
+    public long getPackedState() {
+        long packed = (long) oldest << (3 * HISTORY_SIZE) | (isFirst ? 1L : 0L) << (3 * HISTORY_SIZE + 2);
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            packed |= (long) history[i].ordinal() << (3 * i);
+        }
+        return packed;
+    }
+
+    @Override
+    public void setState(long randomState, long packedState) {
+        random.setState(randomState);
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            history[i] = Shape.shapeOf((int) (packedState >>> (3 * i)) & 7);
+        }
+        oldest = (int) (packedState >>> (3 * HISTORY_SIZE)) & 3;
+        isFirst = (packedState >>> (3 * HISTORY_SIZE + 2) & 1) != 0;
+    }
+
+    @Override
+    public Shape.Tetrominoes next() {
+        Shape.Tetrominoes piece;
+        if (isFirst) {
+            isFirst = false;
+            do {
+                piece = roll();
+            } while (piece == Shape.Tetrominoes.SShape || piece == Shape.Tetrominoes.ZShape
+                    || piece == Shape.Tetrominoes.SquareShape);
+        } else {
+            piece = roll();
+            for (int i = 1; i < ROLLS && inHistory(piece); i++) {
+                piece = roll();
+            }
+        }
+
+        history[oldest] = piece;
+        oldest = (oldest + 1) % HISTORY_SIZE;
+        return piece;
+    }
+
+    private Shape.Tetrominoes roll() {
+        return Shape.shapeOf(1 + random.nextInt(7));
+    }
+
+    private boolean inHistory(Shape.Tetrominoes piece) {
+        for (Shape.Tetrominoes recent : history) {
+            if (recent == piece) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+// Lock-free ring buffer of timestamped inputs for exactly one producer thread
+// (the EDT, where key events arrive) and one consumer thread (whatever runs
+// the logic ticks). Each side only writes its own index and publishes it
+// with a lazy set, so neither side ever blocks or allocates.
+public class InputQueue {
+    // Receives drained inputs in the order they were offered
+    public interface Handler {
+        void accept(GameInput input, long offeredNanos);
+    }
+
+    private static final GameInput[] INPUTS = GameInput.values();
+
+    private final int mask;
+    private final byte[] inputs;
+    private final long[] offeredNanos;
+    // Next slot to read; written by the consumer only
+    private final AtomicLong head = new AtomicLong();
+    // Next slot to write; written by the producer only
+    private final AtomicLong tail = new AtomicLong();
+    // Producer's last look at head, so it rarely touches the consumer's line
+    private long cachedHead;
+    private final AtomicLong rejected = new AtomicLong();
+
+    // capacity is rounded up to a power of two
+    public InputQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        inputs = new byte[size];
+        offeredNanos = new long[size];
+    }
+
+    // Producer side. nanos is the System.nanoTime() at which the input
+    // happened. Returns false, and counts the input as rejected, when the
+    // consumer has fallen a whole buffer behind.
+    public boolean offer(GameInput input, long nanos) {
+        long t = tail.get();
+        if (t - cachedHead > mask) {
+            cachedHead = head.get();
+            if (t - cachedHead > mask) {
+                rejected.incrementAndGet();
+                return false;
+            }
+        }
+        int slot = (int) t & mask;
+        inputs[slot] = (byte) input.ordinal();
+        offeredNanos[slot] = nanos;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    // Consumer side. Hands every input offered so far to handler, oldest
+    // first, and returns how many there were.
+    public int drain(Handler handler) {
+        long h = head.get();
+        long t = tail.get();
+        for (long i = h; i < t; i++) {
+            int slot = (int) i & mask;
+            handler.accept(INPUTS[inputs[slot]], offeredNanos[slot]);
+            // Release each slot as soon as it is consumed
+            head.lazySet(i + 1);
+        }
+        return (int) (t - h);
+    }
+
+    // Consumer side. Discards everything offered so far.
+    public void clear() {
+        head.lazySet(tail.get());
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    // Inputs dropped because the buffer was full
+    public long getRejected() {
+        return rejected.get();
+    }
+}
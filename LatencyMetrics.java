@@ -0,0 +1,67 @@
+import java.util.Arrays;
+
+// Rolling latency percentiles over the last WINDOW samples. One thread
+// records; the figures are recomputed at most once per second and published
+// through volatile fields, like FrameMetrics.
+public class LatencyMetrics {
+    private static final int WINDOW = 512;
+    private static final long PUBLISH_INTERVAL_NANOS = 1_000_000_000L;
+
+    // Recording thread only
+    private final long[] latencies = new long[WINDOW];
+    private final long[] sorted = new long[WINDOW];
+    private int samples = 0;
+    private int nextSample = 0;
+    private long lastPublish = Long.MIN_VALUE;
+    private long recorded = 0;
+
+    private volatile double p50Millis;
+    private volatile double p99Millis;
+    private volatile double maxMillis;
+    private volatile long publishedCount;
+
+    // Records one latency ending at now (System.nanoTime())
+    public void record(long latencyNanos, long now) {
+        latencies[nextSample] = Math.max(0, latencyNanos);
+        nextSample = (nextSample + 1) % WINDOW;
+        samples = Math.min(samples + 1, WINDOW);
+        recorded++;
+
+        if (lastPublish != Long.MIN_VALUE && now - lastPublish < PUBLISH_INTERVAL_NANOS) {
+            return;
+        }
+        lastPublish = now;
+        System.arraycopy(latencies, 0, sorted, 0, samples);
+        Arrays.sort(sorted, 0, samples);
+        p50Millis = percentile(0.50) / 1e6;
+        p99Millis = percentile(0.99) / 1e6;
+        maxMillis = sorted[samples - 1] / 1e6;
+        publishedCount = recorded;
+    }
+
+    private long percentile(double p) {
+        int index = (int) Math.ceil(p * samples) - 1;
+        return sorted[Math.max(0, Math.min(index, samples - 1))];
+    }
+
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    public long getCount() {
+        return publishedCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("p50 %.2f ms, p99 %.2f ms, max %.2f ms", p50Millis, p99Millis, maxMillis);
+    }
+}
@@ -0,0 +1,200 @@
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Named counters and duration histograms that any thread can update without
+// locking. Classes register their metrics once, in static fields, and the
+// registry is read either as a plain text dump with per-second rates or in
+// the Prometheus text format, optionally served over HTTP at /metrics.
+//
+// Updating a counter is a LongAdder increment and recording a duration is one
+// atomic add into a power-of-two bucket, so both are cheap enough for the
+// engine's hot paths even when many BatchRunner threads share them.
+public class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+
+    // Counter values at the previous dump, for the rates
+    private final Map<String, Long> dumpedCounts = new HashMap<>();
+    private long dumpedAt = System.nanoTime();
+
+    // The registry the game's own metrics are registered in
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    // The counter with this name, created on first use
+    public Counter counter(String name, String help) {
+        return counters.computeIfAbsent(name, n -> new Counter(n, help));
+    }
+
+    // The duration histogram with this name, created on first use
+    public Histogram histogram(String name, String help) {
+        return histograms.computeIfAbsent(name, n -> new Histogram(n, help));
+    }
+
+    // Every metric with its value; counters also show their rate since the
+    // previous dump and histograms their approximate percentiles.
+    public synchronized String dump() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - dumpedAt) / 1e9);
+        dumpedAt = now;
+
+        StringBuilder sb = new StringBuilder();
+        for (Counter counter : counters.values()) {
+            long count = counter.get();
+            long previous = dumpedCounts.getOrDefault(counter.name, 0L);
+            dumpedCounts.put(counter.name, count);
+            sb.append(String.format("%-32s %12d %12.1f/s%n", counter.name, count, (count - previous) / seconds));
+        }
+        for (Histogram histogram : histograms.values()) {
+            sb.append(String.format("%-32s %12d   p50 %.3f ms, p99 %.3f ms, max %.3f ms%n", histogram.name,
+                    histogram.getCount(), histogram.percentileNanos(0.50) / 1e6,
+                    histogram.percentileNanos(0.99) / 1e6, histogram.percentileNanos(1.0) / 1e6));
+        }
+        return sb.toString();
+    }
+
+    // Every metric in the Prometheus text exposition format. Histograms are
+    // exported in seconds with one bucket per power of two nanoseconds.
+    public String scrape() {
+        StringBuilder sb = new StringBuilder();
+        for (Counter counter : counters.values()) {
+            sb.append("# HELP ").append(counter.name).append(' ').append(counter.help).append('\n');
+            sb.append("# TYPE ").append(counter.name).append(" counter\n");
+            sb.append(counter.name).append(' ').append(counter.get()).append('\n');
+        }
+        for (Histogram histogram : histograms.values()) {
+            String name = histogram.name + "_seconds";
+            sb.append("# HELP ").append(name).append(' ').append(histogram.help).append('\n');
+            sb.append("# TYPE ").append(name).append(" histogram\n");
+            long cumulative = 0;
+            int last = histogram.highestBucket();
+            for (int i = 0; i <= last; i++) {
+                cumulative += histogram.buckets.get(i);
+                sb.append(name).append("_bucket{le=\"").append(Histogram.bucketLimit(i) / 1e9).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            sb.append(name).append("_bucket{le=\"+Inf\"} ").append(histogram.getCount()).append('\n');
+            sb.append(name).append("_sum ").append(histogram.getSumNanos() / 1e9).append('\n');
+            sb.append(name).append("_count ").append(histogram.getCount()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // Serves scrape() at http://localhost:port/metrics until the server is
+    // stopped or the JVM exits. Only local clients can connect; a scraper on
+    // another machine needs a proxy or an SSH tunnel.
+    public HttpServer serve(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    public static class Counter {
+        private final String name;
+        private final String help;
+        private final LongAdder count = new LongAdder();
+
+        private Counter(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long n) {
+            count.add(n);
+        }
+
+        public long get() {
+            return count.sum();
+        }
+    }
+
+    // Durations in power-of-two nanosecond buckets: bucket i holds values
+    // below 2^(i+1) ns, so percentiles are accurate to within a factor of two.
+    public static class Histogram {
+        private static final int BUCKETS = Long.SIZE;
+
+        private final String name;
+        private final String help;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder sum = new LongAdder();
+
+        private Histogram(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        public void record(long nanos) {
+            long value = Math.max(1, nanos);
+            buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(value));
+            sum.add(value);
+        }
+
+        static long bucketLimit(int bucket) {
+            return bucket >= 62 ? Long.MAX_VALUE : 1L << (bucket + 1);
+        }
+
+        private int highestBucket() {
+            for (int i = BUCKETS - 1; i >= 0; i--) {
+                if (buckets.get(i) != 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        public long getSumNanos() {
+            return sum.sum();
+        }
+
+        // Upper bound of the bucket holding the p-th fraction of samples, 0
+        // when nothing has been recorded
+        public long percentileNanos(double p) {
+            long count = getCount();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(p * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return bucketLimit(i);
+                }
+            }
+            return bucketLimit(highestBucket());
+        }
+    }
+}
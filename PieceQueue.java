@@ -0,0 +1,68 @@
+// Upcoming pieces, held in a ring buffer that is refilled from the randomizer
+// in batches. Taking a piece advances an index instead of shifting an array,
+// and peeking at the preview never allocates.
+public class PieceQueue {
+    static final int CAPACITY = 16;
+    private static final int MASK = CAPACITY - 1;
+
+    private final Randomizer randomizer;
+    private final Shape.Tetrominoes[] ring = new Shape.Tetrominoes[CAPACITY];
+    private int head = 0;
+    private int size = 0;
+
+    public PieceQueue(Randomizer randomizer) {
+        this.randomizer = randomizer;
+    }
+
+    public Randomizer getRandomizer() {
+        return randomizer;
+    }
+
+    public void reset(long seed) {
+        randomizer.reset(seed);
+        head = 0;
+        size = 0;
+    }
+
+    // The index-th upcoming piece, 0 being the next one to spawn
+    public Shape peek(int index) {
+        if (index >= size) {
+            refill();
+        }
+        return Shape.of(ring[(head + index) & MASK]);
+    }
+
+    public Shape poll() {
+        if (size == 0) {
+            refill();
+        }
+        Shape piece = Shape.of(ring[head]);
+        head = (head + 1) & MASK;
+        size--;
+        return piece;
+    }
+
+    // Copies the buffered pieces, next one first, into pieces and returns how
+    // many there were. pieces must hold CAPACITY entries.
+    int saveTo(Shape.Tetrominoes[] pieces) {
+        for (int i = 0; i < size; i++) {
+            pieces[i] = ring[(head + i) & MASK];
+        }
+        return size;
+    }
+
+    // Replaces the buffered pieces with the first count entries of pieces.
+    // The randomizer's state must be restored to match separately.
+    void restore(Shape.Tetrominoes[] pieces, int count) {
+        System.arraycopy(pieces, 0, ring, 0, count);
+        head = 0;
+        size = count;
+    }
+
+    private void refill() {
+        while (size < CAPACITY) {
+            ring[(head + size) & MASK] = randomizer.next();
+            size++;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+import java.util.List;
+
+// Decides how to place pieces in a headless game. Bots implement this so the
+// batch runner, and later the Swing Board, can drive the engine through the
+// same GameInput actions the keyboard produces.
+public interface Player {
+    // Appends the inputs for the engine's current piece. The last input must
+    // lock the piece, normally HARD_DROP.
+    void plan(GameEngine engine, List<GameInput> inputs);
+}
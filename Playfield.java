@@ -0,0 +1,267 @@
+import java.util.Arrays;
+
+// Bitboard storage for the locked stack. Each row is a single long with bit x
+// set when column x is filled, so a full line is one compare and collision is
+// a mask AND. Piece colors live in a separate plane that only rendering reads.
+//
+// Column heights are kept up to date on every lock and line clear, so the
+// drop distance of a piece above the stack is a lookup per piece column. The
+// rows above the tallest column are known to be empty, so clearing, copying
+// and scanning stop there and cost nothing extra on very tall boards.
+//
+// The Zobrist hash of the filled cells is maintained the same way: each row
+// a lock changes or a clear moves swaps its old key for its new one, so
+// reading it is free.
+public class Playfield {
+    // Cell value of garbage rows, after the seven piece colors
+    public static final int GARBAGE = Shape.Tetrominoes.values().length;
+
+    private final int width;
+    private final int height;
+    private final long fullRow;
+    private final long[] rows;
+    private final byte[] colors; // row-major, width cells per row
+    // Rows up to and including the topmost filled cell of each column
+    private final int[] heights;
+    // Height of the tallest column; every row from here up is empty
+    private int stackHeight;
+    private int version;
+    // Zobrist.hash of the filled cells
+    private long hash;
+
+    public Playfield(int width, int height) {
+        if (width < 1 || width > Long.SIZE) {
+            throw new IllegalArgumentException("width must be between 1 and " + Long.SIZE + ": " + width);
+        }
+        if (height < 1) {
+            throw new IllegalArgumentException("height must be positive: " + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.fullRow = width == Long.SIZE ? -1L : (1L << width) - 1;
+        this.rows = new long[height];
+        this.colors = new byte[width * height];
+        this.heights = new int[width];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Number of rows from the floor up to the topmost filled cell
+    public int getStackHeight() {
+        return stackHeight;
+    }
+
+    // Changes whenever the locked stack changes, so renderers know when a
+    // cached image of it is stale.
+    public int getVersion() {
+        return version;
+    }
+
+    // 64-bit hash of which cells are filled; colors do not count
+    public long getHash() {
+        return hash;
+    }
+
+    public void clear() {
+        version++;
+        Arrays.fill(rows, 0, stackHeight, 0L);
+        Arrays.fill(colors, 0, stackHeight * width, (byte) 0);
+        Arrays.fill(heights, 0);
+        stackHeight = 0;
+        hash = 0;
+    }
+
+    // Makes this playfield an exact copy of other, which must have the same size.
+    public void copyFrom(Playfield other) {
+        // Rows above both stacks are empty in both playfields already
+        int used = Math.max(stackHeight, other.stackHeight);
+        System.arraycopy(other.rows, 0, rows, 0, used);
+        System.arraycopy(other.colors, 0, colors, 0, used * width);
+        System.arraycopy(other.heights, 0, heights, 0, width);
+        stackHeight = other.stackHeight;
+        hash = other.hash;
+        version++;
+    }
+
+    public long getRow(int y) {
+        return rows[y];
+    }
+
+    public boolean isOccupied(int x, int y) {
+        return (rows[y] & (1L << x)) != 0;
+    }
+
+    // Shape ordinal of the block at (x, y), 0 when empty.
+    public int getCell(int x, int y) {
+        return colors[y * width + x];
+    }
+
+    public boolean canPlace(Shape piece, int newX, int newY) {
+        int left = newX + piece.minX();
+        if (left < 0 || newX + piece.maxX() >= width) {
+            return false;
+        }
+        if (newY - piece.maxY() < 0 || newY - piece.minY() >= height) {
+            return false;
+        }
+
+        int top = newY - piece.minY();
+        for (int k = 0; k < piece.height(); k++) {
+            if ((rows[top - k] & (piece.rowMask(k) << left)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void lock(Shape piece, int pieceX, int pieceY) {
+        byte color = (byte) piece.getShape().ordinal();
+        version++;
+        for (int i = 0; i < 4; i++) {
+            int x = pieceX + piece.x(i);
+            int y = pieceY - piece.y(i);
+            long row = rows[y];
+            rows[y] = row | 1L << x;
+            hash ^= Zobrist.row(y, row) ^ Zobrist.row(y, rows[y]);
+            colors[y * width + x] = color;
+            heights[x] = Math.max(heights[x], y + 1);
+            stackHeight = Math.max(stackHeight, y + 1);
+        }
+    }
+
+    // Fills the empty cell (x, y) with a color, e.g. to set up a puzzle board
+    public void fill(int x, int y, int cell) {
+        if (isOccupied(x, y)) {
+            throw new IllegalArgumentException("Cell " + x + "," + y + " is already filled");
+        }
+        version++;
+        long row = rows[y];
+        rows[y] = row | 1L << x;
+        hash ^= Zobrist.row(y, row) ^ Zobrist.row(y, rows[y]);
+        colors[y * width + x] = (byte) cell;
+        heights[x] = Math.max(heights[x], y + 1);
+        stackHeight = Math.max(stackHeight, y + 1);
+    }
+
+    // Number of rows the piece at (pieceX, pieceY) falls before it rests on
+    // the stack or the floor. When every column of the piece is above the
+    // stack this comes straight from the column heights; a piece tucked under
+    // an overhang is walked down row by row instead.
+    public int dropDistance(Shape piece, int pieceX, int pieceY) {
+        int left = pieceX + piece.minX();
+        int distance = Integer.MAX_VALUE;
+        for (int k = 0; k < piece.width(); k++) {
+            int gap = pieceY - piece.columnBottom(k) - heights[left + k];
+            if (gap < 0) {
+                return walkDown(piece, pieceX, pieceY);
+            }
+            distance = Math.min(distance, gap);
+        }
+        return distance;
+    }
+
+    private int walkDown(Shape piece, int pieceX, int pieceY) {
+        int distance = 0;
+        while (canPlace(piece, pieceX, pieceY - distance - 1)) {
+            distance++;
+        }
+        return distance;
+    }
+
+    public int getColumnHeight(int x) {
+        return heights[x];
+    }
+
+    // Fills heights[x] with the number of rows up to and including the
+    // topmost filled cell of column x, 0 for an empty column.
+    public void columnHeights(int[] heights) {
+        System.arraycopy(this.heights, 0, heights, 0, width);
+    }
+
+    public int countFilledCells() {
+        int count = 0;
+        for (int y = 0; y < stackHeight; y++) {
+            count += Long.bitCount(rows[y]);
+        }
+        return count;
+    }
+
+    // Pushes the stack up by lines rows and fills the rows below it with
+    // garbage that has a gap at column hole. Returns false when filled cells
+    // were pushed out of the top, which tops the player out.
+    public boolean addGarbage(int lines, int hole) {
+        lines = Math.min(lines, height);
+        version++;
+        boolean fits = stackHeight + lines <= height;
+        int kept = Math.min(stackHeight, height - lines);
+        System.arraycopy(rows, 0, rows, lines, kept);
+        System.arraycopy(colors, 0, colors, lines * width, kept * width);
+
+        long garbage = fullRow & ~(1L << hole);
+        for (int y = 0; y < lines; y++) {
+            rows[y] = garbage;
+            Arrays.fill(colors, y * width, (y + 1) * width, (byte) GARBAGE);
+            colors[y * width + hole] = 0;
+        }
+
+        stackHeight = 0;
+        for (int x = 0; x < width; x++) {
+            int h = heights[x] > 0 ? Math.min(heights[x] + lines, height) : x == hole ? 0 : lines;
+            if (!fits) {
+                // Rows went off the top, so the column may have lost its top cells
+                h = Math.min(h, kept + lines);
+                while (h > 0 && (rows[h - 1] & (1L << x)) == 0) {
+                    h--;
+                }
+            }
+            heights[x] = h;
+            stackHeight = Math.max(stackHeight, h);
+        }
+        // Every row may have moved, so this is no cheaper than a full scan
+        hash = Zobrist.hash(this);
+        return fits;
+    }
+
+    // Removes every full row, shifting the rows above down in a single pass.
+    // Returns the number of rows removed.
+    public int clearFullLines() {
+        int dst = 0;
+        for (int src = 0; src < stackHeight; src++) {
+            long row = rows[src];
+            if (row == fullRow) {
+                hash ^= Zobrist.row(src, row);
+                continue;
+            }
+            if (dst != src) {
+                rows[dst] = row;
+                hash ^= Zobrist.row(src, row) ^ Zobrist.row(dst, row);
+                System.arraycopy(colors, src * width, colors, dst * width, width);
+            }
+            dst++;
+        }
+
+        int removed = stackHeight - dst;
+        if (removed > 0) {
+            version++;
+            Arrays.fill(rows, dst, stackHeight, 0L);
+            Arrays.fill(colors, dst * width, stackHeight * width, (byte) 0);
+            // Columns only get shorter, by the removed rows and any gap they exposed
+            stackHeight = 0;
+            for (int x = 0; x < width; x++) {
+                int h = Math.min(heights[x], dst);
+                while (h > 0 && (rows[h - 1] & (1L << x)) == 0) {
+                    h--;
+                }
+                heights[x] = h;
+                stackHeight = Math.max(stackHeight, h);
+            }
+        }
+        return removed;
+    }
+}
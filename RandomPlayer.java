@@ -0,0 +1,26 @@
+import java.util.List;
+import java.util.Random;
+
+// Baseline bot: picks a random rotation and column for every piece.
+public class RandomPlayer implements Player {
+    private final Random random;
+
+    public RandomPlayer(long seed) {
+        random = new Random(seed);
+    }
+
+    @Override
+    public void plan(GameEngine engine, List<GameInput> inputs) {
+        int rotations = random.nextInt(Shape.NUM_ROTATIONS);
+        for (int i = 0; i < rotations; i++) {
+            inputs.add(GameInput.ROTATE);
+        }
+
+        int shift = random.nextInt(engine.getPlayfield().getWidth()) - engine.getCurrentX();
+        GameInput move = shift < 0 ? GameInput.MOVE_LEFT : GameInput.MOVE_RIGHT;
+        for (int i = 0; i < Math.abs(shift); i++) {
+            inputs.add(move);
+        }
+        inputs.add(GameInput.HARD_DROP);
+    }
+}
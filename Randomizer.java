@@ -0,0 +1,31 @@
+// Source of the piece sequence for one game. Implementations draw from their
+// own SeededRandom, so the same seed always yields the same sequence, and
+// next() never allocates.
+public interface Randomizer {
+    Shape.Tetrominoes next();
+
+    // Restarts the sequence for a new game
+    void reset(long seed);
+
+    // Position in the sequence: the SeededRandom state, and everything else
+    // next() depends on packed into a second long, so GameState can save and
+    // restore a randomizer without allocating.
+    long getRandomState();
+
+    long getPackedState();
+
+    void setState(long randomState, long packedState);
+
+    // Command line name, also stored in replays so they can be played back
+    String name();
+
+    // Randomizer by command line name: weighted, bag or history
+    static Randomizer named(String name, long seed) {
+        return switch (name) {
+            case "weighted" -> new WeightedRandomizer(seed);
+            case "bag" -> new BagRandomizer(seed);
+            case "history" -> new HistoryRandomizer(seed);
+            default -> throw new IllegalArgumentException("Unknown randomizer: " + name);
+        };
+    }
+}
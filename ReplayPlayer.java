@@ -0,0 +1,208 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Feeds a file written by ReplayRecorder back into a fresh GameEngine. Events
+// can be applied one at a time, up to a point in time (for real-time
+// playback), or all at once at full speed.
+//
+// Usage: java ReplayPlayer [--realtime] file...
+// Prints the final score of each replay, which makes a directory of archived
+// games a quick regression check for rule changes.
+public class ReplayPlayer implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_VARINT_BYTES = 10;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final GameEngine engine;
+    private boolean endOfFile = false;
+    private long time = 0;
+
+    // Next event, read ahead so callers can see when it is due
+    private boolean hasPending = false;
+    private int pendingCode;
+    private long pendingTime;
+
+    public ReplayPlayer(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        buffer.limit(0);
+
+        try {
+            byte[] magic = new byte[ReplayRecorder.MAGIC.length];
+            if (!fill(magic.length + 2)) {
+                throw new IOException(path + " is not a replay file");
+            }
+            buffer.get(magic);
+            if (!Arrays.equals(magic, ReplayRecorder.MAGIC)) {
+                throw new IOException(path + " is not a replay file");
+            }
+            int version = buffer.get();
+            if (version < 1 || version > ReplayRecorder.VERSION) {
+                throw new IOException(path + " has unsupported replay version " + version);
+            }
+            byte[] name = new byte[buffer.get() & 0xFF];
+            if (!fill(name.length + Long.BYTES + (version >= 2 ? 1 + Integer.BYTES : 0))) {
+                throw new IOException(path + " ends inside its header");
+            }
+            buffer.get(name);
+            long seed = buffer.getLong();
+            int width = GameEngine.BOARD_WIDTH;
+            int height = GameEngine.BOARD_HEIGHT;
+            if (version >= 2) {
+                width = buffer.get() & 0xFF;
+                height = buffer.getInt();
+            }
+
+            Randomizer randomizer = Randomizer.named(new String(name, StandardCharsets.US_ASCII), seed);
+            engine = new GameEngine(seed, randomizer, width, height);
+            engine.start(0, seed);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public GameEngine getEngine() {
+        return engine;
+    }
+
+    // Milliseconds since the game started at which the next event happens,
+    // or -1 when the replay is finished
+    public long nextEventTime() throws IOException {
+        return readAhead() ? pendingTime : -1;
+    }
+
+    // Applies the next event. Returns false when the replay is finished.
+    public boolean playNext() throws IOException {
+        if (!readAhead()) {
+            return false;
+        }
+        hasPending = false;
+        if (pendingCode == ReplayRecorder.STEP) {
+            engine.step(pendingTime);
+        } else {
+            engine.apply(GameInput.values()[pendingCode], pendingTime);
+        }
+        return true;
+    }
+
+    // Applies every event recorded up to and including the given time.
+    // Returns true if any event was applied.
+    public boolean playUntil(long time) throws IOException {
+        boolean played = false;
+        while (readAhead() && pendingTime <= time) {
+            played |= playNext();
+        }
+        return played;
+    }
+
+    public void playToEnd() throws IOException {
+        while (playNext()) {
+            // Unthrottled
+        }
+    }
+
+    private boolean readAhead() throws IOException {
+        if (hasPending) {
+            return true;
+        }
+        fill(MAX_VARINT_BYTES);
+        if (!buffer.hasRemaining()) {
+            return false;
+        }
+
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (!buffer.hasRemaining()) {
+                throw new EOFException(path + " ends in the middle of an event");
+            }
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        int code = (int) (value & ((1 << ReplayRecorder.CODE_BITS) - 1));
+        if (code > ReplayRecorder.STEP) {
+            throw new IOException(path + " contains unknown event " + code);
+        }
+        time += value >>> ReplayRecorder.CODE_BITS;
+        pendingCode = code;
+        pendingTime = time;
+        hasPending = true;
+        return true;
+    }
+
+    // Makes at least n bytes readable, unless the file ends first. Returns
+    // false if it did.
+    private boolean fill(int n) throws IOException {
+        if (buffer.remaining() >= n || endOfFile) {
+            return buffer.remaining() >= n;
+        }
+        buffer.compact();
+        while (buffer.position() < n) {
+            if (channel.read(buffer) < 0) {
+                endOfFile = true;
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer.remaining() >= n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean realtime = false;
+        int replays = 0;
+        long start = System.nanoTime();
+
+        for (String arg : args) {
+            if (arg.equals("--realtime")) {
+                realtime = true;
+                continue;
+            }
+
+            try (ReplayPlayer replay = new ReplayPlayer(Path.of(arg))) {
+                if (realtime) {
+                    long began = System.currentTimeMillis();
+                    long next;
+                    while ((next = replay.nextEventTime()) >= 0) {
+                        long wait = began + next - System.currentTimeMillis();
+                        if (wait > 0) {
+                            Thread.sleep(wait);
+                        }
+                        replay.playNext();
+                    }
+                } else {
+                    replay.playToEnd();
+                }
+
+                GameEngine engine = replay.getEngine();
+                System.out.printf("%s: score %d, lines %d, level %d, pieces %d%s%n", arg,
+                        engine.getScore(), engine.getLinesCleared(), engine.getLevel(),
+                        engine.getPiecesPlaced(), engine.isGameOver() ? ", game over" : "");
+                replays++;
+            }
+        }
+
+        System.out.printf("%d replays in %.2f s%n", replays, (System.nanoTime() - start) / 1e9);
+    }
+}
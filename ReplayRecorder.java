@@ -0,0 +1,112 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Records one game as its seed plus the stream of engine calls, so
+// ReplayPlayer can reproduce it exactly.
+//
+// File layout: the magic "TRPL", a version byte, the randomizer name (length
+// byte + ASCII), the seed (8 bytes) and the board width (byte) and height
+// (int). Version 1 files end the header after the seed and always use the
+// default board. Then one varint per event:
+// (milliseconds since the previous event << 3) | code, where code is a
+// GameInput ordinal or STEP for a gravity step. Most events fit in one byte.
+public class ReplayRecorder implements Closeable {
+    static final byte[] MAGIC = {'T', 'R', 'P', 'L'};
+    static final int VERSION = 2;
+    static final int CODE_BITS = 3;
+    static final int STEP = GameInput.values().length;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_VARINT_BYTES = 10;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long lastTime;
+    private boolean failed = false;
+
+    // Creates the file and writes the header. startTime is the time passed to
+    // GameEngine.start; event times are stored relative to it.
+    public ReplayRecorder(Path path, String randomizer, long seed, int width, int height, long startTime)
+            throws IOException {
+        this.path = path;
+        this.lastTime = startTime;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        byte[] name = randomizer.getBytes(StandardCharsets.US_ASCII);
+        buffer.put(MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) name.length);
+        buffer.put(name);
+        buffer.putLong(seed);
+        buffer.put((byte) width);
+        buffer.putInt(height);
+    }
+
+    // Recorder for the game that engine has just started at startTime
+    public static ReplayRecorder forGame(Path path, GameEngine engine, long startTime) throws IOException {
+        return new ReplayRecorder(path, engine.getRandomizer().name(), engine.getSeed(),
+                engine.getWidth(), engine.getHeight(), startTime);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public void recordInput(GameInput input, long now) {
+        record(input.ordinal(), now);
+    }
+
+    public void recordStep(long now) {
+        record(STEP, now);
+    }
+
+    private void record(int code, long now) {
+        if (failed) {
+            return;
+        }
+        long delta = Math.max(0, now - lastTime);
+        lastTime = now;
+        if (buffer.remaining() < MAX_VARINT_BYTES) {
+            flushBuffer();
+        }
+        putVarint(buffer, delta << CODE_BITS | code);
+    }
+
+    static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void flushBuffer() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            // A broken recording must not stop the game; report it once and give up
+            failed = true;
+            System.err.println("Replay recording to " + path + " failed: " + e);
+        }
+        buffer.clear();
+    }
+
+    public void flush() {
+        flushBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        channel.close();
+    }
+}
@@ -0,0 +1,371 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Persistent game results, one fixed-width record per game in a memory-mapped
+// file. Appending writes straight into the mapping, and the best TOP_N games
+// are kept as a sorted index in the file header, so opening the store and
+// showing the leaderboard never scans the records. Each process keeps its own
+// record count, so the file is locked for as long as the store is open and a
+// second process opening it fails instead of overwriting its records.
+//
+// File layout: a HEADER_SIZE header (magic, version, record count, index
+// size, then the index as record numbers, best first) followed by
+// RECORD_SIZE records:
+//   timestamp, seed, duration (ms)        3 longs
+//   score, level, lines                   3 ints
+//   locked pieces per shape, Z through J  7 ints
+//
+// Usage: java ScoreStore file [--top N]
+public class ScoreStore implements Closeable {
+    public static final int TOP_N = 100;
+    static final int MAGIC = 0x54534352; // "TSCR"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 512;
+    static final int RECORD_SIZE = 64;
+    private static final int NUM_SHAPES = 7;
+    private static final int INITIAL_CAPACITY = 4096;
+    // A single mapping is limited to 2 GB
+    private static final int MAX_RECORDS = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+
+    private static final int COUNT_OFFSET = 8;
+    private static final int INDEX_SIZE_OFFSET = 12;
+    private static final int INDEX_OFFSET = 16;
+
+    // One stored game. pieceCounts is indexed by shape ordinal minus one.
+    public record Entry(long timestamp, long seed, long durationMillis, int score, int level, int lines,
+                        int[] pieceCounts) {
+        public int pieces() {
+            int total = 0;
+            for (int count : pieceCounts) {
+                total += count;
+            }
+            return total;
+        }
+
+        public GameResult toResult() {
+            return new GameResult(seed, score, lines, level, pieces());
+        }
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private MappedByteBuffer map;
+    private int capacity;
+    private int count;
+    // Record numbers of the best games, best first, and their scores
+    private final int[] top = new int[TOP_N];
+    private final int[] topScores = new int[TOP_N];
+    private int topSize;
+
+    public ScoreStore(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (!tryLock()) {
+            channel.close();
+            throw new IOException(path + " is already open, by another game or process");
+        }
+
+        long size = channel.size();
+        if (size == 0) {
+            remap(INITIAL_CAPACITY);
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            writeCount();
+            map.putInt(INDEX_SIZE_OFFSET, 0);
+            return;
+        }
+
+        if (size < HEADER_SIZE) {
+            channel.close();
+            throw new IOException(path + " is not a score store");
+        }
+        // Checked before mapping, since the mapping grows the file
+        ByteBuffer header = ByteBuffer.allocate(8);
+        channel.read(header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException(path + " is not a version " + VERSION + " score store");
+        }
+        remap((int) Math.min(MAX_RECORDS, Math.max(INITIAL_CAPACITY, (size - HEADER_SIZE) / RECORD_SIZE)));
+        count = map.getInt(COUNT_OFFSET);
+        if (count < 0 || count > capacity) {
+            channel.close();
+            throw new IOException(path + " is damaged: record count " + count);
+        }
+        if (!loadIndex()) {
+            rebuildIndex();
+        }
+    }
+
+    // Locks the whole file, released when the channel is closed. Returns false
+    // when another process, or another store in this one, holds the lock.
+    private boolean tryLock() throws IOException {
+        try {
+            FileLock lock = channel.tryLock();
+            return lock != null;
+        } catch (OverlappingFileLockException e) {
+            return false;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    // Stores the result of the engine's finished game. Returns its rank on the
+    // leaderboard, 0 being the best, or -1 when it did not make the top TOP_N.
+    public synchronized int append(GameEngine engine, long timestamp, long durationMillis) {
+        if (count == capacity) {
+            if (capacity == MAX_RECORDS) {
+                throw new IllegalStateException(path + " is full");
+            }
+            remap((int) Math.min(MAX_RECORDS, 2L * capacity));
+        }
+
+        int at = recordOffset(count);
+        map.putLong(at, timestamp);
+        map.putLong(at + 8, engine.getSeed());
+        map.putLong(at + 16, durationMillis);
+        map.putInt(at + 24, engine.getScore());
+        map.putInt(at + 28, engine.getLevel());
+        map.putInt(at + 32, engine.getLinesCleared());
+        for (int i = 0; i < NUM_SHAPES; i++) {
+            map.putInt(at + 36 + i * 4, engine.getPieceCount(Shape.shapeOf(i + 1)));
+        }
+
+        int rank = insertIntoTop(count, engine.getScore());
+        if (rank >= 0) {
+            writeIndex();
+        }
+        // The count goes last, so a crash mid-append leaves the store as it was
+        count++;
+        writeCount();
+        return rank;
+    }
+
+    public synchronized Entry get(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("record " + index + " of " + count);
+        }
+        int at = recordOffset(index);
+        int[] pieces = new int[NUM_SHAPES];
+        for (int i = 0; i < NUM_SHAPES; i++) {
+            pieces[i] = map.getInt(at + 36 + i * 4);
+        }
+        return new Entry(map.getLong(at), map.getLong(at + 8), map.getLong(at + 16),
+                map.getInt(at + 24), map.getInt(at + 28), map.getInt(at + 32), pieces);
+    }
+
+    // The n best games, best first. Up to TOP_N comes straight from the
+    // index; more than that takes one pass over the scores.
+    public synchronized List<Entry> top(int n) {
+        List<Entry> entries = new ArrayList<>();
+        if (n <= TOP_N) {
+            for (int i = 0; i < Math.min(n, topSize); i++) {
+                entries.add(get(top[i]));
+            }
+            return entries;
+        }
+
+        // Min-heap of the best n games seen so far, as rankKey values
+        long[] heap = new long[Math.min(n, count)];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            long key = rankKey(i);
+            if (size < heap.length) {
+                heap[size] = key;
+                siftUp(heap, size++);
+            } else if (key > heap[0]) {
+                heap[0] = key;
+                siftDown(heap, size);
+            }
+        }
+        Arrays.sort(heap, 0, size);
+        for (int i = size - 1; i >= 0; i--) {
+            entries.add(get(~(int) heap[i]));
+        }
+        return entries;
+    }
+
+    // Orders games like the leaderboard: higher scores first, and among equal
+    // scores the earlier game. The low half holds the inverted record number.
+    private long rankKey(int index) {
+        return (long) scoreOf(index) << 32 | (~index & 0xFFFFFFFFL);
+    }
+
+    private static void siftUp(long[] heap, int i) {
+        long key = heap[i];
+        while (i > 0 && heap[(i - 1) / 2] > key) {
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = key;
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        long key = heap[0];
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= key) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = key;
+    }
+
+    public synchronized int bestScore() {
+        return topSize == 0 ? 0 : topScores[0];
+    }
+
+    // Statistics over every stored game
+    public synchronized BatchSummary summarize() {
+        BatchSummary summary = new BatchSummary();
+        for (int i = 0; i < count; i++) {
+            int at = recordOffset(i);
+            int pieces = 0;
+            for (int s = 0; s < NUM_SHAPES; s++) {
+                pieces += map.getInt(at + 36 + s * 4);
+            }
+            summary.add(new GameResult(map.getLong(at + 8), map.getInt(at + 24), map.getInt(at + 32),
+                    map.getInt(at + 28), pieces));
+        }
+        return summary;
+    }
+
+    private static int recordOffset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    private int scoreOf(int index) {
+        return map.getInt(recordOffset(index) + 24);
+    }
+
+    private void remap(int newCapacity) {
+        try {
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, recordOffset(newCapacity));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not map " + path, e);
+        }
+        capacity = newCapacity;
+    }
+
+    private int insertIntoTop(int index, int score) {
+        if (topSize == TOP_N && score <= topScores[TOP_N - 1]) {
+            return -1;
+        }
+        int rank = topSize < TOP_N ? topSize : TOP_N - 1;
+        while (rank > 0 && topScores[rank - 1] < score) {
+            rank--;
+        }
+        int moved = Math.min(topSize, TOP_N - 1) - rank;
+        System.arraycopy(top, rank, top, rank + 1, moved);
+        System.arraycopy(topScores, rank, topScores, rank + 1, moved);
+        top[rank] = index;
+        topScores[rank] = score;
+        topSize = Math.min(topSize + 1, TOP_N);
+        return rank;
+    }
+
+    // Reads the index from the header. Returns false if it does not match the
+    // records, e.g. after an interrupted append, so it must be rebuilt.
+    private boolean loadIndex() {
+        int size = map.getInt(INDEX_SIZE_OFFSET);
+        if (size != Math.min(count, TOP_N)) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            int index = map.getInt(INDEX_OFFSET + i * 4);
+            if (index < 0 || index >= count) {
+                return false;
+            }
+            top[i] = index;
+            topScores[i] = scoreOf(index);
+            if (i > 0 && topScores[i] > topScores[i - 1]) {
+                return false;
+            }
+        }
+        topSize = size;
+        return true;
+    }
+
+    private void rebuildIndex() {
+        topSize = 0;
+        for (int i = 0; i < count; i++) {
+            insertIntoTop(i, scoreOf(i));
+        }
+        writeIndex();
+    }
+
+    private void writeIndex() {
+        for (int i = 0; i < topSize; i++) {
+            map.putInt(INDEX_OFFSET + i * 4, top[i]);
+        }
+        map.putInt(INDEX_SIZE_OFFSET, topSize);
+    }
+
+    private void writeCount() {
+        map.putInt(COUNT_OFFSET, count);
+    }
+
+    // Forces appended records to disk
+    public synchronized void flush() {
+        map.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        map.force();
+        channel.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java ScoreStore file [--top N]");
+            System.exit(1);
+        }
+        int n = 10;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--top" -> n = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        try (ScoreStore store = new ScoreStore(Path.of(args[0]))) {
+            long start = System.nanoTime();
+            List<Entry> best = store.top(n);
+            double millis = (System.nanoTime() - start) / 1e6;
+
+            System.out.printf("%4s %10s %6s %6s %7s %10s  %s%n", "#", "score", "level", "lines", "pieces",
+                    "time (s)", "seed");
+            for (int i = 0; i < best.size(); i++) {
+                Entry e = best.get(i);
+                System.out.printf("%4d %10d %6d %6d %7d %10.1f  %d%n", i + 1, e.score(), e.level(), e.lines(),
+                        e.pieces(), e.durationMillis() / 1000.0, e.seed());
+            }
+            System.out.printf("top %d of %d games in %.2f ms%n%n", best.size(), store.size(), millis);
+            System.out.print(store.summarize());
+        }
+    }
+}
@@ -0,0 +1,212 @@
+import java.util.List;
+
+// Bot that tries every reachable final placement of the current piece, with
+// and without using hold, and looks ahead through the next-piece queue. Leaf
+// boards are scored by an Evaluator. Positions reached through several move
+// orders are memoized in a bounded, Zobrist-hashed TranspositionTable, and
+// optionally in an EvaluationCache shared with the players on other threads.
+//
+// A placement is reachable when the piece can rotate in place where it is,
+// then slide sideways, then hard drop: the same moves TAdapter offers.
+public class SearchPlayer implements Player {
+    public static final int DEFAULT_DEPTH = 2;
+    public static final int DEFAULT_TABLE_SIZE_LOG2 = 16;
+    private static final double GAME_OVER_VALUE = -1e9;
+
+    private final Evaluator evaluator;
+    private final int depth;
+    private final TranspositionTable table;
+    private final EvaluationCache shared;
+    private final Shape.Tetrominoes[] queue = new Shape.Tetrominoes[GameEngine.NUM_NEXT_PIECES];
+    private Playfield[] scratch;
+
+    // Best root move found by the last search
+    private double bestValue;
+    private boolean bestViaHold;
+    private int bestRotations;
+    private int bestX;
+
+    public SearchPlayer() {
+        this(new Evaluator(), DEFAULT_DEPTH, DEFAULT_TABLE_SIZE_LOG2);
+    }
+
+    public SearchPlayer(Evaluator evaluator, int depth, int tableSizeLog2) {
+        this(evaluator, depth, tableSizeLog2, null);
+    }
+
+    // Player that also looks positions up in, and adds them to, a cache
+    // shared with other players; null for none
+    public SearchPlayer(Evaluator evaluator, int depth, int tableSizeLog2, EvaluationCache shared) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("depth must be at least 1: " + depth);
+        }
+        this.evaluator = evaluator;
+        this.depth = depth;
+        this.table = new TranspositionTable(tableSizeLog2);
+        this.shared = shared;
+    }
+
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    @Override
+    public void plan(GameEngine engine, List<GameInput> inputs) {
+        Playfield field = engine.getPlayfield();
+        ensureScratch(field);
+        for (int i = 0; i < queue.length; i++) {
+            queue[i] = engine.getNextPiece(i).getShape();
+        }
+
+        Shape current = engine.getCurrentPiece();
+        Shape.Tetrominoes hold = engine.getHoldPiece() == null
+                ? Shape.Tetrominoes.NoShape : engine.getHoldPiece().getShape();
+
+        bestValue = Double.NEGATIVE_INFINITY;
+        bestX = engine.getCurrentX();
+        bestRotations = 0;
+        bestViaHold = false;
+
+        placeAll(field, 0, current, engine.getCurrentX(), engine.getCurrentY(), hold, 0, 0, true, false);
+        if (engine.canHold()) {
+            holdAndPlace(field, 0, current.getShape(), hold, 0, 0, true);
+        }
+
+        if (bestViaHold) {
+            inputs.add(GameInput.HOLD);
+        }
+        for (int i = 0; i < bestRotations; i++) {
+            inputs.add(GameInput.ROTATE);
+        }
+        int startX = bestViaHold ? spawnX(field) : engine.getCurrentX();
+        GameInput move = bestX < startX ? GameInput.MOVE_LEFT : GameInput.MOVE_RIGHT;
+        for (int i = 0; i < Math.abs(bestX - startX); i++) {
+            inputs.add(move);
+        }
+        inputs.add(GameInput.HARD_DROP);
+    }
+
+    private void ensureScratch(Playfield field) {
+        if (scratch == null || scratch[0].getWidth() != field.getWidth()
+                || scratch[0].getHeight() != field.getHeight()) {
+            scratch = new Playfield[depth];
+            for (int i = 0; i < depth; i++) {
+                scratch[i] = new Playfield(field.getWidth(), field.getHeight());
+            }
+        }
+    }
+
+    private static int spawnX(Playfield field) {
+        return field.getWidth() / 2;
+    }
+
+    // Best value from a position where `current` is about to spawn.
+    private double valueOf(Playfield field, int level, Shape.Tetrominoes current, Shape.Tetrominoes hold,
+                           int queueIndex, int lines) {
+        if (level == depth || current == null) {
+            return evaluator.evaluate(field, lines);
+        }
+
+        long key = field.getHash()
+                ^ Zobrist.piece(0, current)
+                ^ Zobrist.piece(1, hold)
+                ^ Zobrist.value(2, depth - level)
+                ^ Zobrist.value(3, lines);
+        for (int i = queueIndex; i < queue.length; i++) {
+            key ^= Zobrist.piece(4 + i - queueIndex, queue[i]);
+        }
+        double cached = table.get(key);
+        if (!Double.isNaN(cached)) {
+            return cached;
+        }
+        if (shared != null) {
+            // Players with other weights value the same position differently
+            cached = shared.get(key ^ evaluator.getKey());
+            if (!Double.isNaN(cached)) {
+                table.put(key, cached);
+                return cached;
+            }
+        }
+
+        // Same spawn as GameEngine.newPiece: one row below the top, or game over
+        Shape piece = Shape.of(current);
+        int x = spawnX(field);
+        int y = piece.spawnY(field.getHeight()) - 1;
+        double best = GAME_OVER_VALUE;
+        if (field.canPlace(piece, x, y)) {
+            best = Math.max(best, placeAll(field, level, piece, x, y, hold, queueIndex, lines, false, false));
+            best = Math.max(best, holdAndPlace(field, level, current, hold, queueIndex, lines, false));
+        }
+
+        table.put(key, best);
+        if (shared != null) {
+            shared.put(key ^ evaluator.getKey(), best);
+        }
+        return best;
+    }
+
+    // Swaps current into hold, as GameEngine.holdCurrentPiece does, and tries
+    // every placement of the piece that comes out.
+    private double holdAndPlace(Playfield field, int level, Shape.Tetrominoes current, Shape.Tetrominoes hold,
+                                int queueIndex, int lines, boolean root) {
+        Shape piece;
+        int y;
+        if (hold == Shape.Tetrominoes.NoShape) {
+            if (queueIndex >= queue.length) {
+                return GAME_OVER_VALUE;
+            }
+            piece = Shape.of(queue[queueIndex++]);
+            y = piece.spawnY(field.getHeight()) - 1;
+        } else {
+            piece = Shape.of(hold);
+            y = piece.spawnY(field.getHeight());
+        }
+
+        int x = spawnX(field);
+        if (!field.canPlace(piece, x, y)) {
+            return GAME_OVER_VALUE;
+        }
+        return placeAll(field, level, piece, x, y, current, queueIndex, lines, root, true);
+    }
+
+    // Tries every reachable placement of start from (startX, startY) and
+    // returns the best value. At the root it also records the best move.
+    private double placeAll(Playfield field, int level, Shape start, int startX, int startY,
+                            Shape.Tetrominoes hold, int queueIndex, int lines, boolean root, boolean viaHold) {
+        double best = GAME_OVER_VALUE;
+        Playfield next = scratch[level];
+        Shape piece = start;
+
+        for (int rotations = 0; rotations < Shape.NUM_ROTATIONS; rotations++) {
+            if (rotations > 0) {
+                piece = piece.rotateLeft();
+                if (piece == start || !field.canPlace(piece, startX, startY)) {
+                    break;
+                }
+            }
+
+            for (int dir = -1; dir <= 1; dir += 2) {
+                for (int x = dir < 0 ? startX : startX + 1; field.canPlace(piece, x, startY); x += dir) {
+                    int y = startY - field.dropDistance(piece, x, startY);
+
+                    next.copyFrom(field);
+                    next.lock(piece, x, y);
+                    int cleared = next.clearFullLines();
+                    Shape.Tetrominoes following = queueIndex < queue.length ? queue[queueIndex] : null;
+                    double value = valueOf(next, level + 1, following, hold, queueIndex + 1, lines + cleared);
+
+                    if (value > best) {
+                        best = value;
+                    }
+                    if (root && value > bestValue) {
+                        bestValue = value;
+                        bestViaHold = viaHold;
+                        bestRotations = rotations;
+                        bestX = x;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -1,12 +1,16 @@
-import java.util.Random;
+import java.util.Arrays;
 
-public class Shape {
+// Immutable piece orientation. All 8 shapes x 4 rotations are built once and
+// interned, with their bounds and row masks precomputed, so rotating,
+// previewing and collision testing a piece never allocates.
+public final class Shape {
     protected enum Tetrominoes {
         NoShape, ZShape, SShape, LineShape, TShape, SquareShape, LShape, MirroredLShape
     }
-    
-    private Tetrominoes pieceShape;
-    private int[][] coords;
+
+    public static final int NUM_ROTATIONS = 4;
+
+    private static final Tetrominoes[] SHAPES = Tetrominoes.values();
     private static final int[][][] coordsTable = new int[][][]{
             {{0, 0}, {0, 0}, {0, 0}, {0, 0}},  // NoShape
             {{0, -1}, {0, 0}, {-1, 0}, {-1, 1}},  // ZShape
@@ -17,110 +21,150 @@ public class Shape {
             {{-1, -1}, {0, -1}, {0, 0}, {0, 1}}, // LShape
             {{1, -1}, {0, -1}, {0, 0}, {0, 1}}   // MirroredLShape
     };
-    
-    public Shape() {
-        coords = new int[4][2];
-        setShape(Tetrominoes.NoShape);
+    private static final Shape[][] orientations = new Shape[SHAPES.length][NUM_ROTATIONS];
+
+    static {
+        for (Tetrominoes shape : SHAPES) {
+            Shape[] rotations = orientations[shape.ordinal()];
+            int[][] coords = coordsTable[shape.ordinal()];
+            for (int r = 0; r < NUM_ROTATIONS; r++) {
+                // The square looks the same in every rotation, so it keeps one instance
+                if (shape == Tetrominoes.SquareShape && r > 0) {
+                    rotations[r] = rotations[0];
+                    continue;
+                }
+                rotations[r] = new Shape(shape, r, coords);
+                // Each step is the old rotateLeft: (x, y) -> (y, -x)
+                int[][] next = new int[4][2];
+                for (int i = 0; i < 4; i++) {
+                    next[i][0] = coords[i][1];
+                    next[i][1] = -coords[i][0];
+                }
+                coords = next;
+            }
+            for (int r = 0; r < NUM_ROTATIONS; r++) {
+                rotations[r].left = rotations[(r + 1) % NUM_ROTATIONS];
+                rotations[r].right = rotations[(r + NUM_ROTATIONS - 1) % NUM_ROTATIONS];
+            }
+        }
     }
-    
-    public void setShape(Tetrominoes shape) {
+
+    private final Tetrominoes pieceShape;
+    private final int rotation;
+    private final int[] xs = new int[4];
+    private final int[] ys = new int[4];
+    private final int minX;
+    private final int maxX;
+    private final int minY;
+    private final int maxY;
+    // rowMasks[k] holds the cells with y == minY + k, bit 0 being column minX
+    private final long[] rowMasks;
+    // columnBottoms[k] is the largest y in column minX + k, i.e. its lowest cell on the board
+    private final int[] columnBottoms;
+    private Shape left;
+    private Shape right;
+
+    private Shape(Tetrominoes shape, int rotation, int[][] coords) {
+        this.pieceShape = shape;
+        this.rotation = rotation;
+        int loX = coords[0][0], hiX = coords[0][0], loY = coords[0][1], hiY = coords[0][1];
         for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 2; j++) {
-                coords[i][j] = coordsTable[shape.ordinal()][i][j];
-            }
+            xs[i] = coords[i][0];
+            ys[i] = coords[i][1];
+            loX = Math.min(loX, xs[i]);
+            hiX = Math.max(hiX, xs[i]);
+            loY = Math.min(loY, ys[i]);
+            hiY = Math.max(hiY, ys[i]);
+        }
+        minX = loX;
+        maxX = hiX;
+        minY = loY;
+        maxY = hiY;
+        rowMasks = new long[maxY - minY + 1];
+        for (int i = 0; i < 4; i++) {
+            rowMasks[ys[i] - minY] |= 1L << (xs[i] - minX);
+        }
+        columnBottoms = new int[maxX - minX + 1];
+        Arrays.fill(columnBottoms, Integer.MIN_VALUE);
+        for (int i = 0; i < 4; i++) {
+            columnBottoms[xs[i] - minX] = Math.max(columnBottoms[xs[i] - minX], ys[i]);
         }
-        pieceShape = shape;
     }
-    
-    public Tetrominoes getShape() {
-        return pieceShape;
+
+    // Spawn orientation of the given shape.
+    public static Shape of(Tetrominoes shape) {
+        return orientations[shape.ordinal()][0];
     }
-    
-    public void setRandomShape() {
-        Random r = new Random();
-        int x = r.nextInt(140); // Increased range for weighted probabilities
-        
-        // Weighted distribution:
-        // LineShape (I): 10% chance (x < 14)
-        // Other pieces: 15% chance each (x ranges of 21)
-        
-        Tetrominoes shape;
-        if (x < 14) {
-            shape = Tetrominoes.LineShape;      // 10% chance
-        } else if (x < 35) {
-            shape = Tetrominoes.ZShape;         // 15% chance
-        } else if (x < 56) {
-            shape = Tetrominoes.SShape;         // 15% chance
-        } else if (x < 77) {
-            shape = Tetrominoes.TShape;         // 15% chance
-        } else if (x < 98) {
-            shape = Tetrominoes.SquareShape;    // 15% chance
-        } else if (x < 119) {
-            shape = Tetrominoes.LShape;         // 15% chance
-        } else {
-            shape = Tetrominoes.MirroredLShape; // 15% chance
-        }
-        
-        setShape(shape);
+
+    public static Shape of(Tetrominoes shape, int rotation) {
+        return orientations[shape.ordinal()][rotation];
+    }
+
+    public static Tetrominoes shapeOf(int ordinal) {
+        return SHAPES[ordinal];
     }
 
-    private void setX(int index, int x) {
-        coords[index][0] = x;
+    public Tetrominoes getShape() {
+        return pieceShape;
     }
 
-    private void setY(int index, int y) {
-        coords[index][1] = y;
+    public int getRotation() {
+        return rotation;
     }
 
     public int x(int index) {
-        return coords[index][0];
+        return xs[index];
     }
 
     public int y(int index) {
-        return coords[index][1];
+        return ys[index];
     }
 
     public int minX() {
-        int m = coords[0][0];
-        for (int i = 0; i < 4; i++) {
-            m = Math.min(m, coords[i][0]);
-        }
-        return m;
+        return minX;
+    }
+
+    public int maxX() {
+        return maxX;
     }
 
     public int minY() {
-        int m = coords[0][1];
-        for (int i = 0; i < 4; i++) {
-            m = Math.min(m, coords[i][1]);
-        }
-        return m;
+        return minY;
     }
 
-    public Shape rotateLeft() {
-        if (pieceShape == Tetrominoes.SquareShape)
-            return this;
+    public int maxY() {
+        return maxY;
+    }
 
-        Shape result = new Shape();
-        result.pieceShape = pieceShape;
+    public int width() {
+        return maxX - minX + 1;
+    }
 
-        for (int i = 0; i < 4; i++) {
-            result.setX(i, y(i));
-            result.setY(i, -x(i));
-        }
-        return result;
+    public int height() {
+        return maxY - minY + 1;
     }
 
-    public Shape rotateRight() {
-        if (pieceShape == Tetrominoes.SquareShape)
-            return this;
+    // Cells of the piece row with y == minY() + k, bit 0 being column minX().
+    public long rowMask(int k) {
+        return rowMasks[k];
+    }
 
-        Shape result = new Shape();
-        result.pieceShape = pieceShape;
+    // Largest y among the cells in column minX() + k. A piece at row pieceY
+    // has its lowest cell in that column on row pieceY - columnBottom(k).
+    public int columnBottom(int k) {
+        return columnBottoms[k];
+    }
 
-        for (int i = 0; i < 4; i++) {
-            result.setX(i, -y(i));
-            result.setY(i, x(i));
-        }
-        return result;
+    // Spawn row on a board of the given height: the piece's top cells sit on the top row.
+    public int spawnY(int boardHeight) {
+        return boardHeight - 1 + minY;
+    }
+
+    public Shape rotateLeft() {
+        return left;
+    }
+
+    public Shape rotateRight() {
+        return right;
     }
 }
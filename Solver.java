@@ -0,0 +1,712 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Exact solver for a known piece sequence: the placements of the next count
+// pieces, with hold, that give the most points by GameEngine's scoring table
+// or leave the lowest stack. Placements are the ones SearchPlayer considers:
+// rotate at the spawn position, slide, hard drop. Topping out is never
+// optimal. Used offline to get optimal baselines for puzzles and seeds.
+//
+// The search is depth-first branch and bound. Every position has an upper
+// bound on what the remaining pieces can still add (the rows their cells
+// could complete, scored as well as any split into clears, or a stack no
+// lower than the leftover cells allow), and subtrees whose bound cannot beat
+// the best complete sequence found so far are skipped.
+// Placements are tried best-first by the Evaluator, so a good sequence is
+// found early and most of the tree is pruned.
+//
+// The top SPLIT_PLIES levels run as fork-join tasks: each node searches its
+// most promising placement first, then forks the rest, so their pruning
+// starts from a good incumbent (young brothers wait). Below that each task
+// searches sequentially. All threads share the incumbent and a lockless
+// transposition table, so a position reached by different move orders or
+// threads is only expanded once. Table entries are exact values or, for
+// subtrees that were cut off, upper bounds.
+//
+// Usage: java Solver [--pieces IJLOSTZ... | --seed S] [--randomizer name]
+//                    [--count K] [--goal score|height] [--board file]
+//                    [--width W] [--height H] [--lines L] [--threads T]
+//                    [--table-log2 N]
+public class Solver {
+    public enum Goal { SCORE, HEIGHT }
+
+    public static final int DEFAULT_TABLE_SIZE_LOG2 = 20;
+    private static final int SPLIT_PLIES = 2;
+    // Subtrees this small are not worth splitting across threads
+    private static final int SEQUENTIAL_PIECES = 3;
+    private static final int TOP_OUT = -(1 << 30);
+    private static final int NO_SOLUTION = TOP_OUT - 1;
+    // Returned by Search.shortcut when a position has to be expanded
+    private static final int EXPAND = Integer.MIN_VALUE;
+
+    // One placement of an optimal sequence
+    public record Move(Shape piece, int rotations, int x, int y, boolean viaHold, int lines, int points) {
+    }
+
+    public record Result(Goal goal, int value, List<Move> moves, Playfield finalBoard, long positions,
+                         long tableHits) {
+        public boolean isSolved() {
+            return value != NO_SOLUTION;
+        }
+
+        // Inputs that play the sequence in a GameEngine, one hard drop per piece
+        public List<GameInput> inputs() {
+            List<GameInput> inputs = new ArrayList<>();
+            int spawnX = finalBoard.getWidth() / 2;
+            for (Move move : moves) {
+                if (move.viaHold) {
+                    inputs.add(GameInput.HOLD);
+                }
+                for (int i = 0; i < move.rotations; i++) {
+                    inputs.add(GameInput.ROTATE);
+                }
+                GameInput slide = move.x < spawnX ? GameInput.MOVE_LEFT : GameInput.MOVE_RIGHT;
+                for (int i = 0; i < Math.abs(move.x - spawnX); i++) {
+                    inputs.add(slide);
+                }
+                inputs.add(GameInput.HARD_DROP);
+            }
+            return inputs;
+        }
+    }
+
+    private final Goal goal;
+    private final Playfield board;
+    private final Shape.Tetrominoes[] pieces;
+    private final Shape.Tetrominoes startHold;
+    private final int count;
+    private final int startLines;
+    private final Table table;
+    private final int threads;
+    // Most points for clearing n lines in total at level 1
+    private final int[] bestPoints;
+    // Best total over complete sequences found so far, shared by all threads
+    private final AtomicInteger incumbent = new AtomicInteger(NO_SOLUTION);
+    private final LongAdder positions = new LongAdder();
+    // Sequential searches never fork, so a thread's scratch is never shared
+    private final ThreadLocal<Search> searches;
+
+    // Solver for placing count of the given pieces, in order, on a copy of
+    // board. Using hold takes an extra piece from the sequence the first time.
+    public Solver(Goal goal, Playfield board, Shape.Tetrominoes[] pieces, Shape.Tetrominoes hold, int count,
+                  int linesCleared, int tableSizeLog2, int threads) {
+        if (count < 1 || count > pieces.length) {
+            throw new IllegalArgumentException("count must be between 1 and " + pieces.length + ": " + count);
+        }
+        this.goal = goal;
+        this.board = new Playfield(board.getWidth(), board.getHeight());
+        this.board.copyFrom(board);
+        this.pieces = pieces.clone();
+        this.startHold = hold;
+        this.count = count;
+        this.startLines = linesCleared;
+        this.table = new Table(tableSizeLog2);
+        this.threads = threads;
+        bestPoints = new int[4 * count + 1];
+        for (int n = 1; n < bestPoints.length; n++) {
+            for (int k = 1; k <= Math.min(4, n); k++) {
+                bestPoints[n] = Math.max(bestPoints[n], GameEngine.linePoints(k, 1) + bestPoints[n - k]);
+            }
+        }
+        this.searches = ThreadLocal.withInitial(Search::new);
+    }
+
+    public Result solve() {
+        incumbent.set(NO_SOLUTION);
+        positions.reset();
+        table.clear();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Node(board, 0, startHold, 0, startLines, 0));
+        } finally {
+            pool.shutdown();
+        }
+        int value = incumbent.get();
+        List<Move> moves = new ArrayList<>();
+        Playfield end = new Playfield(board.getWidth(), board.getHeight());
+        end.copyFrom(board);
+        if (value != NO_SOLUTION) {
+            end = principalVariation(value, moves);
+        }
+        return new Result(goal, value, moves, end, positions.sum(), table.getHits());
+    }
+
+    // Walks down from the root, at each level taking a placement whose subtree
+    // reaches the optimal total again. The table makes the re-searches cheap.
+    private Playfield principalVariation(int value, List<Move> moves) {
+        Search search = new Search();
+        Playfield field = board;
+        int index = 0;
+        Shape.Tetrominoes hold = startHold;
+        int lines = startLines;
+        int soFar = 0;
+        for (int placed = 0; placed < count; placed++) {
+            Children children = search.expand(placed, field, index, hold, lines);
+            int chosen = -1;
+            for (int k = 0; k < children.size && chosen < 0; k++) {
+                int c = children.order[k];
+                // Only a complete sequence reaching value lifts the incumbent past value - 1
+                incumbent.set(value - 1);
+                search.search(children.boards[c], children.nextIndex[c], children.nextHold[c], placed + 1,
+                        lines + children.lines[c], soFar + children.reward[c]);
+                if (incumbent.get() >= value) {
+                    chosen = c;
+                }
+            }
+            if (chosen < 0) {
+                throw new IllegalStateException("Lost the optimal sequence at piece " + placed);
+            }
+            moves.add(new Move(children.piece[chosen], children.rotations[chosen], children.x[chosen],
+                    children.y[chosen], children.viaHold[chosen], children.lines[chosen],
+                    goal == Goal.SCORE ? children.reward[chosen] : GameEngine.linePoints(
+                            children.lines[chosen], GameEngine.levelFor(lines))));
+            Playfield next = new Playfield(field.getWidth(), field.getHeight());
+            next.copyFrom(children.boards[chosen]);
+            field = next;
+            index = children.nextIndex[chosen];
+            hold = children.nextHold[chosen];
+            lines += children.lines[chosen];
+            soFar += children.reward[chosen];
+        }
+        incumbent.set(value);
+        return field;
+    }
+
+    private long key(Playfield field, int index, Shape.Tetrominoes hold, int placed, int lines) {
+        long key = field.getHash()
+                ^ Zobrist.value(0, index)
+                ^ Zobrist.piece(1, hold)
+                ^ Zobrist.value(2, placed);
+        // Lines only matter to the score, through the level
+        return goal == Goal.SCORE ? key ^ Zobrist.value(3, lines) : key;
+    }
+
+    // Value of a finished sequence beyond the points it scored on the way
+    private int terminalValue(Playfield field) {
+        return goal == Goal.SCORE ? 0 : -field.getStackHeight();
+    }
+
+    // Points scored on the way plus the value of what follows; a subtree
+    // that only tops out stays TOP_OUT whatever was scored before it
+    private static int plus(int reward, int value) {
+        return value == TOP_OUT ? TOP_OUT : reward + value;
+    }
+
+    private int reward(int cleared, int lines) {
+        return goal == Goal.SCORE ? GameEngine.linePoints(cleared, GameEngine.levelFor(lines)) : 0;
+    }
+
+    // The placements of one position, best first
+    private final class Children {
+        Shape[] piece = new Shape[0];
+        int[] rotations = new int[0];
+        int[] x = new int[0];
+        int[] y = new int[0];
+        boolean[] viaHold = new boolean[0];
+        int[] lines = new int[0];
+        int[] reward = new int[0];
+        int[] nextIndex = new int[0];
+        Shape.Tetrominoes[] nextHold = new Shape.Tetrominoes[0];
+        Playfield[] boards = new Playfield[0];
+        double[] rank = new double[0];
+        int[] order = new int[0];
+        int size;
+
+        // Slot for one more placement, growing the arrays as needed
+        int add(Playfield field) {
+            if (size == boards.length) {
+                int capacity = Math.max(16, size * 2);
+                piece = Arrays.copyOf(piece, capacity);
+                rotations = Arrays.copyOf(rotations, capacity);
+                x = Arrays.copyOf(x, capacity);
+                y = Arrays.copyOf(y, capacity);
+                viaHold = Arrays.copyOf(viaHold, capacity);
+                lines = Arrays.copyOf(lines, capacity);
+                reward = Arrays.copyOf(reward, capacity);
+                nextIndex = Arrays.copyOf(nextIndex, capacity);
+                nextHold = Arrays.copyOf(nextHold, capacity);
+                rank = Arrays.copyOf(rank, capacity);
+                order = Arrays.copyOf(order, capacity);
+                boards = Arrays.copyOf(boards, capacity);
+                for (int i = size; i < capacity; i++) {
+                    boards[i] = new Playfield(field.getWidth(), field.getHeight());
+                }
+            }
+            return size++;
+        }
+
+        // Insertion sort of the placements by rank, highest first
+        void sort() {
+            for (int i = 0; i < size; i++) {
+                int c = i;
+                int j = i;
+                while (j > 0 && rank[order[j - 1]] < rank[c]) {
+                    order[j] = order[j - 1];
+                    j--;
+                }
+                order[j] = c;
+            }
+        }
+    }
+
+    // Scratch for searching sequentially on one thread: the placements of
+    // every level on the current path
+    private final class Search {
+        private final Children[] levels = new Children[count];
+        private final Evaluator evaluator = new Evaluator();
+        // Number of rows with each count of empty cells
+        private final int[] rowsByEmpty = new int[board.getWidth() + 1];
+        // Whether the last value returned was exact rather than an upper bound
+        boolean exact;
+
+        Search() {
+            for (int i = 0; i < count; i++) {
+                levels[i] = new Children();
+            }
+        }
+
+        int search(Playfield field, int index, Shape.Tetrominoes hold, int placed, int lines, int soFar) {
+            long key = key(field, index, hold, placed, lines);
+            int value = shortcut(field, key, placed, lines, soFar);
+            if (value != EXPAND) {
+                return value;
+            }
+
+            Children children = expand(placed, field, index, hold, lines);
+            int best = TOP_OUT;
+            boolean allExact = true;
+            for (int k = 0; k < children.size; k++) {
+                int c = children.order[k];
+                int reward = children.reward[c];
+                value = plus(reward, search(children.boards[c], children.nextIndex[c], children.nextHold[c],
+                        placed + 1, lines + children.lines[c], soFar + reward));
+                allExact &= exact;
+                best = Math.max(best, value);
+            }
+            table.put(key, best, count - placed, allExact);
+            exact = allExact;
+            return best;
+        }
+
+        // The value of a position when it is known without expanding it: a
+        // finished sequence, a bound that cannot beat the incumbent, or a
+        // usable table entry. EXPAND otherwise.
+        int shortcut(Playfield field, long key, int placed, int lines, int soFar) {
+            positions.increment();
+            exact = true;
+            if (placed == count) {
+                int value = terminalValue(field);
+                incumbent.accumulateAndGet(soFar + value, Math::max);
+                return value;
+            }
+
+            int threshold = incumbent.get() - soFar;
+            long entry = table.get(key);
+            if (entry != Table.MISS) {
+                int value = Table.value(entry);
+                if (Table.isExact(entry)) {
+                    if (value != TOP_OUT) {
+                        incumbent.accumulateAndGet(soFar + value, Math::max);
+                    }
+                    return value;
+                }
+                if (value <= threshold) {
+                    exact = false;
+                    return value;
+                }
+            }
+
+            int bound = bound(field, count - placed, lines);
+            if (bound <= threshold) {
+                exact = false;
+                return bound;
+            }
+            return EXPAND;
+        }
+
+        // Most the remaining pieces could still add. A row only clears once
+        // its empty cells are filled, so they can clear at most as many rows
+        // as the 4 cells each of them brings can fill, cheapest rows first,
+        // and at most 4 per piece. Those lines score at most the best split
+        // into clears at the final level, and whatever cells do not fill
+        // cleared rows stay on the board.
+        int bound(Playfield field, int remaining, int lines) {
+            int width = field.getWidth();
+            Arrays.fill(rowsByEmpty, 0);
+            for (int y = 0; y < field.getStackHeight(); y++) {
+                rowsByEmpty[width - Long.bitCount(field.getRow(y))]++;
+            }
+            rowsByEmpty[width] += field.getHeight() - field.getStackHeight();
+
+            int cells = 4 * remaining;
+            int clearable = 0;
+            for (int empty = 1; empty <= width && cells >= empty; empty++) {
+                int rows = Math.min(rowsByEmpty[empty], cells / empty);
+                clearable += rows;
+                cells -= rows * empty;
+            }
+            clearable = Math.min(clearable, 4 * remaining);
+
+            if (goal == Goal.SCORE) {
+                return bestPoints[clearable] * GameEngine.levelFor(lines + clearable);
+            }
+            int left = field.countFilledCells() + 4 * remaining - clearable * width;
+            return -((left + width - 1) / width);
+        }
+
+        // Fills this level's placements for the position where pieces[index]
+        // spawns, with and without hold, and ranks them. None means game over
+        // or no piece left to place.
+        Children expand(int placed, Playfield field, int index, Shape.Tetrominoes hold, int lines) {
+            Children children = levels[placed];
+            children.size = 0;
+            if (index == pieces.length) {
+                // Hold used up the sequence before every piece was placed
+                return children;
+            }
+            Shape.Tetrominoes current = pieces[index];
+
+            // Same spawn as GameEngine.newPiece: one row below the top, or game over
+            Shape piece = Shape.of(current);
+            int x = field.getWidth() / 2;
+            int y = piece.spawnY(field.getHeight()) - 1;
+            if (!field.canPlace(piece, x, y)) {
+                return children;
+            }
+            placeAll(children, field, piece, x, y, false, index + 1, hold, lines);
+
+            // Hold swaps as GameEngine.holdCurrentPiece does
+            if (hold == Shape.Tetrominoes.NoShape) {
+                if (index + 1 < pieces.length) {
+                    piece = Shape.of(pieces[index + 1]);
+                    y = piece.spawnY(field.getHeight()) - 1;
+                    if (field.canPlace(piece, x, y)) {
+                        placeAll(children, field, piece, x, y, true, index + 2, current, lines);
+                    }
+                }
+            } else {
+                piece = Shape.of(hold);
+                y = piece.spawnY(field.getHeight());
+                if (field.canPlace(piece, x, y)) {
+                    placeAll(children, field, piece, x, y, true, index + 1, current, lines);
+                }
+            }
+            children.sort();
+            return children;
+        }
+
+        // Adds every placement reachable by rotating at (startX, startY), then
+        // sliding, then hard dropping, the same set SearchPlayer tries
+        private void placeAll(Children children, Playfield field, Shape start, int startX, int startY,
+                              boolean viaHold, int nextIndex, Shape.Tetrominoes nextHold, int lines) {
+            Shape piece = start;
+            for (int rotations = 0; rotations < Shape.NUM_ROTATIONS; rotations++) {
+                if (rotations > 0) {
+                    piece = piece.rotateLeft();
+                    if (piece == start || !field.canPlace(piece, startX, startY)) {
+                        break;
+                    }
+                }
+
+                for (int dir = -1; dir <= 1; dir += 2) {
+                    for (int x = dir < 0 ? startX : startX + 1; field.canPlace(piece, x, startY); x += dir) {
+                        int c = children.add(field);
+                        Playfield next = children.boards[c];
+                        int y = startY - field.dropDistance(piece, x, startY);
+                        next.copyFrom(field);
+                        next.lock(piece, x, y);
+                        int cleared = next.clearFullLines();
+
+                        children.piece[c] = piece;
+                        children.rotations[c] = rotations;
+                        children.x[c] = x;
+                        children.y[c] = y;
+                        children.viaHold[c] = viaHold;
+                        children.lines[c] = cleared;
+                        children.reward[c] = reward(cleared, lines);
+                        children.nextIndex[c] = nextIndex;
+                        children.nextHold[c] = nextHold;
+                        children.rank[c] = children.reward[c] + evaluator.evaluate(next, cleared);
+                    }
+                }
+            }
+        }
+    }
+
+    // A position in the top SPLIT_PLIES levels of the tree, searched in
+    // parallel with its siblings
+    private final class Node extends RecursiveAction {
+        private final Playfield field;
+        private final int index;
+        private final Shape.Tetrominoes hold;
+        private final int placed;
+        private final int lines;
+        private final int soFar;
+        int value;
+        boolean exact;
+
+        Node(Playfield field, int index, Shape.Tetrominoes hold, int placed, int lines, int soFar) {
+            this.field = field;
+            this.index = index;
+            this.hold = hold;
+            this.placed = placed;
+            this.lines = lines;
+            this.soFar = soFar;
+        }
+
+        @Override
+        protected void compute() {
+            Search search = searches.get();
+            if (placed >= SPLIT_PLIES || count - placed <= SEQUENTIAL_PIECES) {
+                value = search.search(field, index, hold, placed, lines, soFar);
+                exact = search.exact;
+                return;
+            }
+
+            long key = key(field, index, hold, placed, lines);
+            value = search.shortcut(field, key, placed, lines, soFar);
+            exact = search.exact;
+            if (value != EXPAND) {
+                return;
+            }
+
+            // Copied out before anything forks, since joining may run other
+            // tasks on this thread that reuse its Search
+            Children children = search.expand(placed, field, index, hold, lines);
+            Node[] nodes = new Node[children.size];
+            int[] rewards = new int[children.size];
+            for (int k = 0; k < children.size; k++) {
+                int c = children.order[k];
+                Playfield board = new Playfield(field.getWidth(), field.getHeight());
+                board.copyFrom(children.boards[c]);
+                rewards[k] = children.reward[c];
+                nodes[k] = new Node(board, children.nextIndex[c], children.nextHold[c], placed + 1,
+                        lines + children.lines[c], soFar + rewards[k]);
+            }
+
+            if (nodes.length > 0) {
+                nodes[0].compute();
+                invokeAll(Arrays.asList(nodes).subList(1, nodes.length));
+            }
+            int best = TOP_OUT;
+            boolean allExact = true;
+            for (int k = 0; k < nodes.length; k++) {
+                best = Math.max(best, plus(rewards[k], nodes[k].value));
+                allExact &= nodes[k].exact;
+            }
+            table.put(key, best, count - placed, allExact);
+            value = best;
+            exact = allExact;
+        }
+    }
+
+    // Lockless transposition table shared by every thread. A slot holds the
+    // key XORed with its entry and the entry itself, each written without
+    // locking; a slot torn by two threads writing at once fails the key check
+    // and reads as a miss. Each bucket has a slot that keeps the entry with
+    // the most pieces left, which saved the most work, and one that always
+    // takes the newest entry. Entries pack the value, the pieces left and
+    // whether the value is exact or an upper bound.
+    static final class Table {
+        static final long MISS = 0;
+        private static final long EXACT = 1L << 40;
+
+        private final long[] slots;
+        private final int mask;
+        private final LongAdder hits = new LongAdder();
+
+        Table(int sizeLog2) {
+            slots = new long[4 << sizeLog2];
+            mask = (1 << sizeLog2) - 1;
+        }
+
+        static int value(long entry) {
+            return (int) entry;
+        }
+
+        static boolean isExact(long entry) {
+            return (entry & EXACT) != 0;
+        }
+
+        private static int remaining(long entry) {
+            return (int) (entry >>> 32) & 0xFF;
+        }
+
+        // The entry stored for key, or MISS
+        long get(long key) {
+            int base = bucket(key);
+            for (int i = base; i < base + 4; i += 2) {
+                long entry = slots[i + 1];
+                if (entry != MISS && (slots[i] ^ entry) == key) {
+                    hits.increment();
+                    return entry;
+                }
+            }
+            return MISS;
+        }
+
+        void put(long key, int value, int remaining, boolean exact) {
+            // Remaining is at least 1, so an entry is never MISS
+            long entry = (value & 0xFFFFFFFFL) | (long) Math.min(remaining, 0xFF) << 32 | (exact ? EXACT : 0);
+            int base = bucket(key);
+            long kept = slots[base + 1];
+            int slot = kept == MISS || (slots[base] ^ kept) == key || remaining(kept) <= remaining ? base : base + 2;
+            slots[slot] = key ^ entry;
+            slots[slot + 1] = entry;
+        }
+
+        void clear() {
+            Arrays.fill(slots, 0);
+            hits.reset();
+        }
+
+        long getHits() {
+            return hits.sum();
+        }
+
+        private int bucket(long key) {
+            return ((int) (key ^ (key >>> 32)) & mask) * 4;
+        }
+    }
+
+    static Shape.Tetrominoes parsePiece(char letter) {
+        return switch (Character.toUpperCase(letter)) {
+            case 'I' -> Shape.Tetrominoes.LineShape;
+            case 'O' -> Shape.Tetrominoes.SquareShape;
+            case 'T' -> Shape.Tetrominoes.TShape;
+            case 'S' -> Shape.Tetrominoes.SShape;
+            case 'Z' -> Shape.Tetrominoes.ZShape;
+            case 'L' -> Shape.Tetrominoes.LShape;
+            case 'J' -> Shape.Tetrominoes.MirroredLShape;
+            default -> throw new IllegalArgumentException("Unknown piece: " + letter);
+        };
+    }
+
+    static char letterOf(Shape.Tetrominoes piece) {
+        return "-ZSITOLJ".charAt(piece.ordinal());
+    }
+
+    // Reads a board drawn top row first, '.' for an empty cell and anything
+    // else for a filled one. The drawing sits on the floor of a board of the
+    // given height and the drawing's width.
+    static Playfield readBoard(Path file, int height) throws IOException {
+        List<String> rows = Files.readAllLines(file).stream().filter(line -> !line.isBlank()).toList();
+        if (rows.isEmpty() || rows.size() > height) {
+            throw new IllegalArgumentException(file + " must have between 1 and " + height + " rows");
+        }
+        int width = rows.get(0).length();
+        Playfield field = new Playfield(width, height);
+        for (int i = 0; i < rows.size(); i++) {
+            String row = rows.get(i);
+            if (row.length() != width) {
+                throw new IllegalArgumentException(file + ": row " + (i + 1) + " is not " + width + " wide");
+            }
+            int y = rows.size() - 1 - i;
+            for (int x = 0; x < width; x++) {
+                if (row.charAt(x) != '.') {
+                    field.fill(x, y, Playfield.GARBAGE);
+                }
+            }
+        }
+        return field;
+    }
+
+    static String format(Playfield field) {
+        StringBuilder text = new StringBuilder();
+        for (int y = Math.max(field.getStackHeight(), 1) - 1; y >= 0; y--) {
+            text.append('|');
+            for (int x = 0; x < field.getWidth(); x++) {
+                int cell = field.getCell(x, y);
+                text.append(cell == 0 ? '.' : cell == Playfield.GARBAGE ? '#'
+                        : letterOf(Shape.Tetrominoes.values()[cell]));
+            }
+            text.append("|\n");
+        }
+        return text.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        String pieceList = null;
+        long seed = 1;
+        String randomizer = "weighted";
+        int count = 6;
+        Goal goal = Goal.SCORE;
+        Path boardFile = null;
+        int width = GameEngine.BOARD_WIDTH;
+        int height = GameEngine.BOARD_HEIGHT;
+        int lines = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int tableSizeLog2 = DEFAULT_TABLE_SIZE_LOG2;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--pieces" -> pieceList = args[++i];
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--randomizer" -> randomizer = args[++i];
+                case "--count" -> count = Integer.parseInt(args[++i]);
+                case "--goal" -> goal = Goal.valueOf(args[++i].toUpperCase());
+                case "--board" -> boardFile = Path.of(args[++i]);
+                case "--width" -> width = Integer.parseInt(args[++i]);
+                case "--height" -> height = Integer.parseInt(args[++i]);
+                case "--lines" -> lines = Integer.parseInt(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--table-log2" -> tableSizeLog2 = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        Playfield board = boardFile != null ? readBoard(boardFile, height) : new Playfield(width, height);
+        Shape.Tetrominoes[] pieces;
+        if (pieceList != null) {
+            pieces = new Shape.Tetrominoes[pieceList.length()];
+            for (int i = 0; i < pieces.length; i++) {
+                pieces[i] = parsePiece(pieceList.charAt(i));
+            }
+            count = Math.min(count, pieces.length);
+        } else {
+            // The same sequence GameEngine.start deals for this seed, plus
+            // one more for hold
+            PieceQueue queue = new PieceQueue(Randomizer.named(randomizer, seed));
+            queue.reset(seed);
+            pieces = new Shape.Tetrominoes[count + 1];
+            for (int i = 0; i < pieces.length; i++) {
+                pieces[i] = queue.poll().getShape();
+            }
+        }
+        StringBuilder sequence = new StringBuilder();
+        for (Shape.Tetrominoes piece : pieces) {
+            sequence.append(letterOf(piece));
+        }
+
+        long start = System.nanoTime();
+        Result result = new Solver(goal, board, pieces, Shape.Tetrominoes.NoShape, count, lines,
+                tableSizeLog2, threads).solve();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("Pieces %s, best %s over %d pieces on %dx%d%n", sequence,
+                goal.name().toLowerCase(), count, board.getWidth(), board.getHeight());
+        if (!result.isSolved()) {
+            System.out.println("Every sequence tops out");
+        } else {
+            System.out.println(goal == Goal.SCORE ? "Score " + result.value()
+                    : "Stack height " + -result.value());
+            for (int i = 0; i < result.moves().size(); i++) {
+                Move move = result.moves().get(i);
+                System.out.printf("%3d. %c rotate %d to x %d%s%s%n", i + 1, letterOf(move.piece().getShape()),
+                        move.rotations(), move.x(), move.viaHold() ? " via hold" : "",
+                        move.lines() > 0 ? ", " + move.lines() + " lines for " + move.points() : "");
+            }
+            System.out.print(format(result.finalBoard()));
+        }
+        System.out.printf("%d positions in %.2f s, %d table hits%n", result.positions(), seconds,
+                result.tableHits());
+    }
+}
@@ -0,0 +1,265 @@
+import java.util.List;
+
+// Cross-checks Solver against a plain exhaustive search, with no bounds, no
+// table and no threads, over the same placement model. Cases are random
+// small boards, from empty to nearly full so that some or every sequence tops
+// out, plus fixed puzzles that once went wrong. For each case both goals
+// must agree on whether any sequence survives and on the optimal value, and
+// the returned moves replayed on the board must reach that value. Solutions
+// for seeded sequences are also played through a GameEngine with
+// Result.inputs(), which must end with the same score and stack.
+//
+// Usage: java SolverCheck [--cases N] [--seed S]
+public class SolverCheck {
+    // Value of a position from which every sequence tops out
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private final Solver.Goal goal;
+    private final Shape.Tetrominoes[] pieces;
+    private final int count;
+
+    private SolverCheck(Solver.Goal goal, Shape.Tetrominoes[] pieces, int count) {
+        this.goal = goal;
+        this.pieces = pieces;
+        this.count = count;
+    }
+
+    // Best value over every sequence, as Solver defines it, or NONE
+    private int exhaustive(Playfield field, int index, Shape.Tetrominoes hold, int placed, int lines) {
+        if (placed == count) {
+            return goal == Solver.Goal.SCORE ? 0 : -field.getStackHeight();
+        }
+        if (index == pieces.length) {
+            return NONE;
+        }
+        Shape.Tetrominoes current = pieces[index];
+        Shape piece = Shape.of(current);
+        int x = field.getWidth() / 2;
+        int y = piece.spawnY(field.getHeight()) - 1;
+        if (!field.canPlace(piece, x, y)) {
+            return NONE;
+        }
+        int best = placeAll(field, piece, x, y, index + 1, hold, placed, lines);
+        if (hold == Shape.Tetrominoes.NoShape) {
+            if (index + 1 < pieces.length) {
+                Shape next = Shape.of(pieces[index + 1]);
+                int nextY = next.spawnY(field.getHeight()) - 1;
+                if (field.canPlace(next, x, nextY)) {
+                    best = Math.max(best, placeAll(field, next, x, nextY, index + 2, current, placed, lines));
+                }
+            }
+        } else {
+            Shape held = Shape.of(hold);
+            int heldY = held.spawnY(field.getHeight());
+            if (field.canPlace(held, x, heldY)) {
+                best = Math.max(best, placeAll(field, held, x, heldY, index + 1, current, placed, lines));
+            }
+        }
+        return best;
+    }
+
+    private int placeAll(Playfield field, Shape start, int startX, int startY, int nextIndex,
+                         Shape.Tetrominoes nextHold, int placed, int lines) {
+        int best = NONE;
+        Shape piece = start;
+        for (int rotations = 0; rotations < Shape.NUM_ROTATIONS; rotations++) {
+            if (rotations > 0) {
+                piece = piece.rotateLeft();
+                if (piece == start || !field.canPlace(piece, startX, startY)) {
+                    break;
+                }
+            }
+            for (int dir = -1; dir <= 1; dir += 2) {
+                for (int x = dir < 0 ? startX : startX + 1; field.canPlace(piece, x, startY); x += dir) {
+                    Playfield next = copy(field);
+                    next.lock(piece, x, startY - field.dropDistance(piece, x, startY));
+                    int cleared = next.clearFullLines();
+                    int value = exhaustive(next, nextIndex, nextHold, placed + 1, lines + cleared);
+                    if (value != NONE) {
+                        best = Math.max(best, reward(cleared, lines) + value);
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private int reward(int cleared, int lines) {
+        return goal == Solver.Goal.SCORE ? GameEngine.linePoints(cleared, GameEngine.levelFor(lines)) : 0;
+    }
+
+    // Replays the moves on a copy of board and returns the value they reach,
+    // or NONE when a move is not a legal resting placement
+    private int replay(Playfield board, int lines, List<Solver.Move> moves) {
+        Playfield field = copy(board);
+        int value = 0;
+        for (Solver.Move move : moves) {
+            if (!field.canPlace(move.piece(), move.x(), move.y())
+                    || field.dropDistance(move.piece(), move.x(), move.y()) != 0) {
+                return NONE;
+            }
+            field.lock(move.piece(), move.x(), move.y());
+            int cleared = field.clearFullLines();
+            value += reward(cleared, lines);
+            lines += cleared;
+        }
+        return goal == Solver.Goal.SCORE ? value : -field.getStackHeight();
+    }
+
+    // Runs one case for both goals; returns the number of failures
+    private static int check(String name, Playfield board, Shape.Tetrominoes[] pieces, int count, int lines,
+                             int threads) {
+        int failures = 0;
+        for (Solver.Goal goal : Solver.Goal.values()) {
+            SolverCheck check = new SolverCheck(goal, pieces, count);
+            int expected = check.exhaustive(board, 0, Shape.Tetrominoes.NoShape, 0, lines);
+            Solver.Result result = new Solver(goal, board, pieces, Shape.Tetrominoes.NoShape, count, lines,
+                    12, threads).solve();
+
+            String problem = null;
+            if (result.isSolved() != (expected != NONE)) {
+                problem = result.isSolved() ? "solved, but every sequence tops out" : "found no sequence";
+            } else if (result.isSolved() && result.value() != expected) {
+                problem = "value " + result.value() + ", exhaustive search found " + expected;
+            } else if (result.isSolved() && (result.moves().size() != count
+                    || check.replay(board, lines, result.moves()) != expected)) {
+                problem = "moves do not reach " + expected;
+            }
+            if (problem != null) {
+                failures++;
+                System.out.printf("FAIL %s, %s goal, %d of %s with %d threads: %s%n%s", name,
+                        goal.name().toLowerCase(), count, sequence(pieces), threads, problem, Solver.format(board));
+            }
+        }
+        return failures;
+    }
+
+    // Solves a seeded sequence on an empty board and plays the solution
+    // through a GameEngine dealing the same pieces; returns the number of failures
+    private static int checkEngine(long seed, int width, int height, int count) {
+        int failures = 0;
+        PieceQueue queue = new PieceQueue(new WeightedRandomizer(seed));
+        queue.reset(seed);
+        Shape.Tetrominoes[] pieces = new Shape.Tetrominoes[count + 1];
+        for (int i = 0; i < pieces.length; i++) {
+            pieces[i] = queue.poll().getShape();
+        }
+        for (Solver.Goal goal : Solver.Goal.values()) {
+            Solver.Result result = new Solver(goal, new Playfield(width, height), pieces,
+                    Shape.Tetrominoes.NoShape, count, 0, 12, 1).solve();
+            if (!result.isSolved()) {
+                continue;
+            }
+            GameEngine engine = new GameEngine(seed, new WeightedRandomizer(seed), width, height);
+            engine.start(0, seed);
+            for (GameInput input : result.inputs()) {
+                engine.apply(input, 0);
+            }
+            int reached = goal == Solver.Goal.SCORE ? engine.getScore()
+                    : -engine.getPlayfield().getStackHeight();
+            if (engine.getPiecesPlaced() != count || reached != result.value()
+                    || engine.getPlayfield().getHash() != result.finalBoard().getHash()) {
+                failures++;
+                System.out.printf("FAIL engine replay of seed %d on %dx%d, %s goal: %d pieces placed, %d reached,"
+                                + " solver claims %d%n", seed, width, height, goal.name().toLowerCase(),
+                        engine.getPiecesPlaced(), reached, result.value());
+            }
+        }
+        return failures;
+    }
+
+    // Board with the given rows, top row first, '.' for empty
+    static Playfield board(int height, String... rows) {
+        Playfield field = new Playfield(rows[0].length(), height);
+        for (int i = 0; i < rows.length; i++) {
+            int y = rows.length - 1 - i;
+            for (int x = 0; x < rows[i].length(); x++) {
+                if (rows[i].charAt(x) != '.') {
+                    field.fill(x, y, Playfield.GARBAGE);
+                }
+            }
+        }
+        return field;
+    }
+
+    private static Playfield randomBoard(SeededRandom random) {
+        int width = 4 + random.nextInt(3);
+        int height = 4 + random.nextInt(5);
+        Playfield field = new Playfield(width, height);
+        // From empty up to nearly full, with at least one hole per row
+        int rows = random.nextInt(height);
+        for (int y = 0; y < rows; y++) {
+            int hole = random.nextInt(width);
+            for (int x = 0; x < width; x++) {
+                if (x != hole && random.nextInt(4) != 0) {
+                    field.fill(x, y, Playfield.GARBAGE);
+                }
+            }
+        }
+        return field;
+    }
+
+    private static Playfield copy(Playfield field) {
+        Playfield copy = new Playfield(field.getWidth(), field.getHeight());
+        copy.copyFrom(field);
+        return copy;
+    }
+
+    private static String sequence(Shape.Tetrominoes[] pieces) {
+        StringBuilder text = new StringBuilder();
+        for (Shape.Tetrominoes piece : pieces) {
+            text.append(Solver.letterOf(piece));
+        }
+        return text.toString();
+    }
+
+    private static Shape.Tetrominoes[] parse(String letters) {
+        Shape.Tetrominoes[] pieces = new Shape.Tetrominoes[letters.length()];
+        for (int i = 0; i < pieces.length; i++) {
+            pieces[i] = Solver.parsePiece(letters.charAt(i));
+        }
+        return pieces;
+    }
+
+    public static void main(String[] args) {
+        int cases = 300;
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--cases" -> cases = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        int failures = 0;
+        int checked = 0;
+        // Every sequence tops out, after a clear on the way for the score goal
+        failures += check("top-out puzzle", board(6, "..##", "###."), parse("ZTZO"), 3, 0, 1);
+        // Holding the first piece draws the second, leaving nothing to place next
+        failures += check("short list", board(6, "#.##"), parse("OI"), 2, 0, 1);
+        checked += 2;
+
+        SeededRandom random = new SeededRandom(seed);
+        for (int i = 0; i < cases; i++) {
+            Shape.Tetrominoes[] pieces = new Shape.Tetrominoes[4];
+            for (int j = 0; j < pieces.length; j++) {
+                pieces[j] = Shape.Tetrominoes.values()[1 + random.nextInt(7)];
+            }
+            int count = 2 + random.nextInt(2);
+            int lines = random.nextInt(3) * 4;
+            failures += check("random case " + i, randomBoard(random), pieces, count, lines, 1 + random.nextInt(3));
+            checked++;
+        }
+
+        for (long s = seed; s < seed + 20; s++) {
+            failures += checkEngine(s, 4 + (int) (s % 3), 8, 4);
+            checked++;
+        }
+
+        System.out.printf("%d cases checked, %d failures%n", checked, failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+}
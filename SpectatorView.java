@@ -0,0 +1,402 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongFunction;
+
+// Watches many bot games at once in a single component. The games run on a
+// few worker threads; after every change a worker saves its engine into a
+// GameState and swaps it in as the slot's latest state. A Swing Timer then
+// takes the latest state of only the slots that changed, draws them into one
+// shared atlas image at a small block size and repaints just their cells.
+//
+// Within a cell only the old and new piece are redrawn while the stack is
+// unchanged, so the cost of a frame follows the number of moves made, not the
+// number of boards on screen.
+//
+// Usage: java SpectatorView [--games N] [--player random|search] [--threads T]
+//                          [--block-size B] [--fps F] [--width W] [--height H]
+public class SpectatorView extends JComponent {
+    public static final int DEFAULT_BLOCK_SIZE = 6;
+    public static final int DEFAULT_FPS = 30;
+    private static final int LABEL_HEIGHT = 12;
+    private static final int GAP = 4;
+    private static final int BOT_INPUT_DELAY = 60;
+    private static final int RESTART_DELAY = 2000;
+
+    private static final Color BACKGROUND_COLOR = new Color(30, 30, 30);
+    private static final Color BOARD_BACKGROUND_COLOR = new Color(20, 20, 20);
+    private static final Color GAME_OVER_COLOR = new Color(0, 0, 0, 150);
+    private static final Font LABEL_FONT = new Font("SansSerif", Font.PLAIN, 10);
+
+    private final int boardWidth;
+    private final int boardHeight;
+    private final int blockSize;
+    private final int cellWidth;
+    private final int cellHeight;
+    private final BlockSprites sprites;
+    private final List<Slot> slots = new ArrayList<>();
+    private final FrameMetrics metrics = new FrameMetrics();
+    private final Timer frameTimer;
+    private final long frameNanos;
+    private int columns = 1;
+    private BufferedImage atlas;
+    private long lastFrame;
+
+    private volatile boolean running = false;
+    private final List<Thread> workers = new ArrayList<>();
+
+    public SpectatorView(int boardWidth, int boardHeight, int blockSize, int framesPerSecond) {
+        this.boardWidth = boardWidth;
+        this.boardHeight = boardHeight;
+        this.blockSize = blockSize;
+        this.cellWidth = boardWidth * blockSize + GAP;
+        this.cellHeight = boardHeight * blockSize + LABEL_HEIGHT + GAP;
+        this.sprites = new BlockSprites(blockSize);
+        this.frameNanos = 1_000_000_000L / framesPerSecond;
+        frameTimer = new Timer(1000 / framesPerSecond, e -> refresh());
+        setOpaque(true);
+    }
+
+    // Adds a game to watch, played by player. Must be called before start().
+    public void addGame(GameEngine engine, Player player) {
+        if (engine.getWidth() != boardWidth || engine.getHeight() != boardHeight) {
+            throw new IllegalArgumentException("board is " + engine.getWidth() + "x" + engine.getHeight()
+                    + ", view is for " + boardWidth + "x" + boardHeight);
+        }
+        if (running) {
+            throw new IllegalStateException("games must be added before start()");
+        }
+        Slot slot = new Slot(engine, player, boardWidth, boardHeight);
+        slots.add(slot);
+
+        // Roughly square atlas: columns grow with the square root of the count
+        columns = Math.max(1, (int) Math.ceil(Math.sqrt(slots.size() * (double) cellHeight / cellWidth)));
+        int rows = (slots.size() + columns - 1) / columns;
+        for (int i = 0; i < slots.size(); i++) {
+            slots.get(i).left = (i % columns) * cellWidth;
+            slots.get(i).top = (i / columns) * cellHeight;
+        }
+        setPreferredSize(new Dimension(columns * cellWidth, rows * cellHeight));
+    }
+
+    public int getGameCount() {
+        return slots.size();
+    }
+
+    public FrameMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Starts every game, the given number of worker threads playing them and
+    // the frame timer. Call on the EDT.
+    public void start(int threads) {
+        if (running) {
+            return;
+        }
+        Dimension size = getPreferredSize();
+        atlas = new BufferedImage(Math.max(1, size.width), Math.max(1, size.height), BufferedImage.TYPE_INT_RGB);
+        Graphics g = atlas.getGraphics();
+        g.setColor(BACKGROUND_COLOR);
+        g.fillRect(0, 0, atlas.getWidth(), atlas.getHeight());
+        g.dispose();
+
+        long now = System.currentTimeMillis();
+        for (Slot slot : slots) {
+            slot.engine.start(now);
+            slot.lastFall = now;
+            slot.publish();
+        }
+
+        running = true;
+        int count = Math.max(1, Math.min(threads, slots.size()));
+        for (int w = 0; w < count; w++) {
+            int first = w;
+            Thread worker = new Thread(() -> play(first, count), "spectator-" + w);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        lastFrame = System.nanoTime();
+        frameTimer.start();
+    }
+
+    public void stop() {
+        running = false;
+        frameTimer.stop();
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        workers.clear();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        if (atlas == null) {
+            g.setColor(BACKGROUND_COLOR);
+            g.fillRect(0, 0, getWidth(), getHeight());
+            return;
+        }
+        // The clip covers only the cells repainted since the last paint
+        g.drawImage(atlas, 0, 0, null);
+    }
+
+    // Worker thread: plays every count-th game starting at first, one bot
+    // input per game every BOT_INPUT_DELAY ms.
+    private void play(int first, int count) {
+        long nextStep = System.nanoTime();
+        while (running) {
+            long now = System.currentTimeMillis();
+            for (int i = first; i < slots.size(); i += count) {
+                slots.get(i).advance(now);
+            }
+
+            nextStep += BOT_INPUT_DELAY * 1_000_000L;
+            long sleepNanos = nextStep - System.nanoTime();
+            if (sleepNanos <= 0) {
+                // Fell behind; carry on from now instead of bursting to catch up
+                nextStep = System.nanoTime();
+                continue;
+            }
+            try {
+                Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // EDT: draws the slots that changed into the atlas and repaints their cells
+    private void refresh() {
+        long now = System.nanoTime();
+        Graphics g = null;
+        for (Slot slot : slots) {
+            if (!slot.takeLatest()) {
+                continue;
+            }
+            if (g == null) {
+                g = atlas.getGraphics();
+                g.setFont(LABEL_FONT);
+            }
+            drawSlot(g, slot);
+            repaint(slot.left, slot.top, cellWidth, cellHeight);
+        }
+        if (g != null) {
+            g.dispose();
+        }
+        metrics.recordFrame(now, now - lastFrame, frameNanos);
+        lastFrame = now;
+    }
+
+    private void drawSlot(Graphics g, Slot slot) {
+        GameEngine shown = slot.shown;
+        int left = slot.left;
+        int top = slot.top + LABEL_HEIGHT;
+
+        if (shown.getScore() != slot.drawnScore) {
+            slot.drawnScore = shown.getScore();
+            g.setColor(BACKGROUND_COLOR);
+            g.fillRect(left, slot.top, cellWidth, LABEL_HEIGHT);
+            g.setColor(Color.LIGHT_GRAY);
+            g.drawString(Integer.toString(slot.drawnScore), left, top - 2);
+        }
+
+        // The stack only changes when a piece locks or a new game starts
+        boolean stackChanged = shown.getPiecesPlaced() != slot.drawnPieces || shown.getSeed() != slot.drawnSeed
+                || shown.isGameOver() || slot.drawnGameOver;
+        if (stackChanged) {
+            drawStack(g, shown.getPlayfield(), left, top);
+        } else {
+            erasePiece(g, slot.drawnPiece, slot.drawnX, slot.drawnY, left, top);
+        }
+
+        Shape piece = shown.getCurrentPiece();
+        if (piece.getShape() != Shape.Tetrominoes.NoShape) {
+            for (int i = 0; i < 4; i++) {
+                int x = shown.getCurrentX() + piece.x(i);
+                int y = shown.getCurrentY() - piece.y(i);
+                if (y < boardHeight) {
+                    sprites.drawBlock(g, left + x * blockSize, rowTop(top, y), piece.getShape());
+                }
+            }
+        }
+        if (shown.isGameOver()) {
+            g.setColor(GAME_OVER_COLOR);
+            g.fillRect(left, top, boardWidth * blockSize, boardHeight * blockSize);
+        }
+
+        slot.drawnPieces = shown.getPiecesPlaced();
+        slot.drawnSeed = shown.getSeed();
+        slot.drawnGameOver = shown.isGameOver();
+        slot.drawnPiece = piece;
+        slot.drawnX = shown.getCurrentX();
+        slot.drawnY = shown.getCurrentY();
+    }
+
+    private void drawStack(Graphics g, Playfield field, int left, int top) {
+        g.setColor(BOARD_BACKGROUND_COLOR);
+        g.fillRect(left, top, boardWidth * blockSize, boardHeight * blockSize);
+        for (int y = 0; y < field.getStackHeight(); y++) {
+            long row = field.getRow(y);
+            while (row != 0) {
+                int x = Long.numberOfTrailingZeros(row);
+                row &= row - 1;
+                sprites.drawCell(g, left + x * blockSize, rowTop(top, y), field.getCell(x, y));
+            }
+        }
+    }
+
+    private void erasePiece(Graphics g, Shape piece, int pieceX, int pieceY, int left, int top) {
+        if (piece == null || piece.getShape() == Shape.Tetrominoes.NoShape) {
+            return;
+        }
+        g.setColor(BOARD_BACKGROUND_COLOR);
+        for (int i = 0; i < 4; i++) {
+            int x = pieceX + piece.x(i);
+            int y = pieceY - piece.y(i);
+            if (y < boardHeight) {
+                g.fillRect(left + x * blockSize, rowTop(top, y), blockSize, blockSize);
+            }
+        }
+    }
+
+    private int rowTop(int top, int row) {
+        return top + (boardHeight - 1 - row) * blockSize;
+    }
+
+    // One watched game. The worker thread owns engine, player and back; the
+    // EDT owns shown and the drawn* fields; front and dirty are handed over
+    // under the slot's lock.
+    private static class Slot {
+        final GameEngine engine;
+        final Player player;
+        final List<GameInput> plan = new ArrayList<>();
+        int nextInput = 0;
+        int plannedAt = -1;
+        long lastFall;
+        long gameOverAt;
+        GameState back;
+
+        // Guarded by this
+        GameState front;
+        boolean dirty;
+
+        final GameEngine shown;
+        int left;
+        int top;
+        int drawnScore = -1;
+        int drawnPieces = -1;
+        long drawnSeed;
+        boolean drawnGameOver;
+        Shape drawnPiece;
+        int drawnX;
+        int drawnY;
+
+        Slot(GameEngine engine, Player player, int width, int height) {
+            this.engine = engine;
+            this.player = player;
+            back = new GameState(width, height);
+            front = new GameState(width, height);
+            shown = new GameEngine(0, Randomizer.named(engine.getRandomizer().name(), 0), width, height);
+        }
+
+        // Worker: one bot input plus gravity, or a restart once a finished
+        // game has been shown for RESTART_DELAY
+        void advance(long now) {
+            boolean changed;
+            if (engine.isGameOver()) {
+                if (now - gameOverAt < RESTART_DELAY) {
+                    return;
+                }
+                engine.start(now);
+                lastFall = now;
+                changed = true;
+            } else {
+                if (nextInput >= plan.size() || plannedAt != engine.getPiecesPlaced()) {
+                    plan.clear();
+                    nextInput = 0;
+                    plannedAt = engine.getPiecesPlaced();
+                    player.plan(engine, plan);
+                }
+                changed = engine.apply(plan.get(nextInput++), now);
+                if (now - lastFall >= engine.getFallDelay()) {
+                    lastFall = now;
+                    changed |= engine.step(now);
+                }
+                if (engine.isGameOver()) {
+                    gameOverAt = now;
+                }
+            }
+            if (changed) {
+                publish();
+            }
+        }
+
+        // Worker: makes the engine's current state the latest one
+        void publish() {
+            engine.saveState(back);
+            synchronized (this) {
+                GameState latest = back;
+                back = front;
+                front = latest;
+                dirty = true;
+            }
+        }
+
+        // EDT: loads the latest state into shown; false if nothing changed
+        synchronized boolean takeLatest() {
+            if (!dirty) {
+                return false;
+            }
+            shown.restoreState(front);
+            dirty = false;
+            return true;
+        }
+    }
+
+    public static void main(String[] args) {
+        int games = 100;
+        String player = "random";
+        int threads = Runtime.getRuntime().availableProcessors();
+        int blockSize = DEFAULT_BLOCK_SIZE;
+        int fps = DEFAULT_FPS;
+        int width = GameEngine.BOARD_WIDTH;
+        int height = GameEngine.BOARD_HEIGHT;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games" -> games = Integer.parseInt(args[++i]);
+                case "--player" -> player = args[++i];
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--block-size" -> blockSize = Integer.parseInt(args[++i]);
+                case "--fps" -> fps = Integer.parseInt(args[++i]);
+                case "--width" -> width = Integer.parseInt(args[++i]);
+                case "--height" -> height = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        LongFunction<Player> players = BatchRunner.playerFactory(player);
+        SpectatorView view = new SpectatorView(width, height, blockSize, fps);
+        long seed = System.nanoTime();
+        for (int i = 0; i < games; i++) {
+            long gameSeed = BatchRunner.gameSeed(seed, i);
+            view.addGame(new GameEngine(gameSeed, new WeightedRandomizer(gameSeed), width, height),
+                    players.apply(gameSeed));
+        }
+
+        int workerThreads = threads;
+        EventQueue.invokeLater(() -> {
+            JFrame frame = new JFrame("Tetris spectator");
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.add(new JScrollPane(view));
+            frame.pack();
+            frame.setLocationRelativeTo(null);
+            frame.setVisible(true);
+            view.start(workerThreads);
+            FrameMetrics metrics = view.getMetrics();
+            new Timer(1000, e -> frame.setTitle(String.format("Tetris spectator - %d games, %.0f fps, frame p99 %.2f ms",
+                    view.getGameCount(), metrics.getFramesPerSecond(), metrics.getFrameTimeP99Millis()))).start();
+        });
+    }
+}
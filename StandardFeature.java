@@ -0,0 +1,43 @@
+// Board features commonly used by Tetris placement bots.
+public enum StandardFeature implements BoardFeature {
+    // Sum of all column heights
+    AGGREGATE_HEIGHT {
+        @Override
+        public double measure(Playfield field, int[] heights, int linesCleared) {
+            int sum = 0;
+            for (int x = 0; x < field.getWidth(); x++) {
+                sum += heights[x];
+            }
+            return sum;
+        }
+    },
+    // Lines cleared by the placements that led to this board
+    LINES_CLEARED {
+        @Override
+        public double measure(Playfield field, int[] heights, int linesCleared) {
+            return linesCleared;
+        }
+    },
+    // Empty cells with a filled cell somewhere above them in the same column
+    HOLES {
+        @Override
+        public double measure(Playfield field, int[] heights, int linesCleared) {
+            int covered = 0;
+            for (int x = 0; x < field.getWidth(); x++) {
+                covered += heights[x];
+            }
+            return covered - field.countFilledCells();
+        }
+    },
+    // Sum of height differences between neighbouring columns
+    BUMPINESS {
+        @Override
+        public double measure(Playfield field, int[] heights, int linesCleared) {
+            int sum = 0;
+            for (int x = 1; x < field.getWidth(); x++) {
+                sum += Math.abs(heights[x] - heights[x - 1]);
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Per-piece event log for analytics, written to one file for any number of
+// concurrent games. Each engine gets its own Stream (engine.setTelemetry),
+// which buffers events in plain arrays on the game's thread. A full buffer
+// is encoded as one columnar batch and handed to a background writer through
+// a bounded lock-free queue, which the writer polls so that handing off never
+// wakes a thread. When the writer falls behind and the queue is full, the
+// batch is dropped and counted instead of waiting, so a slow disk can never
+// stall a game loop; getDroppedEvents() says how much was lost.
+//
+// File layout: the magic "TTLM" and a version byte, then batches, each an
+// int length and that many bytes:
+//   stream id, event count, time of the first event      varints
+//   types                                                 one byte each
+//   times, as ms since the previous event                 varints
+//   pieces, shape ordinal << 2 | rotation                 one byte each
+//   x, y                                                  zigzag varints
+//   values                                                zigzag varints
+//   score deltas                                          varints
+// Storing each field contiguously keeps the mostly zero columns to one byte
+// per event. What value holds depends on the type: the seed for START, the
+// time since spawn for LOCK, the outgoing piece for HOLD, the lines for
+// LINES, the new level for LEVEL and the final score for GAME_OVER.
+//
+// Usage: java TelemetryRecorder file
+public class TelemetryRecorder implements Closeable {
+    static final byte[] MAGIC = {'T', 'T', 'L', 'M'};
+    static final int VERSION = 1;
+
+    // Event types
+    public static final int START = 0;
+    public static final int SPAWN = 1;
+    public static final int HOLD = 2;
+    public static final int LOCK = 3;
+    public static final int LINES = 4;
+    public static final int LEVEL = 5;
+    public static final int GAME_OVER = 6;
+    static final String[] TYPE_NAMES = {"start", "spawn", "hold", "lock", "lines", "level", "game over"};
+
+    // Events buffered per stream; about 4 KB of arrays each
+    static final int BATCH_EVENTS = 128;
+    private static final int QUEUE_BATCHES = 4096;
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+    // How long the writer sleeps when it finds nothing to write
+    private static final long IDLE_NANOS = 1_000_000;
+
+    private static final MetricsRegistry.Counter EVENTS = MetricsRegistry.getDefault().counter(
+            "tetris_telemetry_events_total", "Telemetry events recorded");
+    private static final MetricsRegistry.Counter DROPPED = MetricsRegistry.getDefault().counter(
+            "tetris_telemetry_dropped_total", "Telemetry events dropped because the writer fell behind");
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ConcurrentLinkedQueue<byte[]> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Thread writer;
+    private final AtomicLong nextStream = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private volatile IOException failure;
+    private volatile boolean closed = false;
+
+    public TelemetryRecorder(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 1);
+        header.put(MAGIC).put((byte) VERSION).flip();
+        channel.write(header);
+        writer = new Thread(this::writeBatches, "telemetry-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // A new stream for one engine; not thread-safe, like the engine
+    public Stream newStream() {
+        return new Stream(nextStream.getAndIncrement());
+    }
+
+    public long getDroppedEvents() {
+        return dropped.get();
+    }
+
+    public long getWrittenBytes() {
+        return written.get();
+    }
+
+    // Queues a batch without ever blocking or waking the writer, which
+    // polls; a game thread never waits for it. The batch is counted in queued
+    // before closed is checked, so the writer, which only stops once it has
+    // seen closed and then an empty count, either writes it or it is dropped.
+    private void submit(byte[] batch, int events) {
+        if (queued.incrementAndGet() > QUEUE_BATCHES || closed || failure != null) {
+            queued.decrementAndGet();
+            dropped.addAndGet(events);
+            DROPPED.add(events);
+            return;
+        }
+        queue.add(batch);
+    }
+
+    // Copies batches into one large buffer and writes it whenever it fills or
+    // the queue runs dry, so a busy writer makes few large writes
+    private void writeBatches() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        while (true) {
+            byte[] batch = queue.poll();
+            if (batch == null) {
+                write(buffer);
+                if (closed && queued.get() == 0) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+            queued.decrementAndGet();
+            if (buffer.remaining() < Integer.BYTES + batch.length) {
+                write(buffer);
+            }
+            buffer.putInt(batch.length).put(batch);
+        }
+    }
+
+    private void write(ByteBuffer buffer) {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        if (failure == null) {
+            try {
+                int bytes = buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                written.addAndGet(bytes);
+            } catch (IOException e) {
+                // Keep draining so the games never notice; close() reports it
+                failure = e;
+                System.err.println("Telemetry recording to " + path + " failed: " + e);
+            }
+        }
+        buffer.clear();
+    }
+
+    // Writes everything already queued and closes the file. Streams should be
+    // flushed first; events recorded after this are dropped.
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // The events of one engine, buffered column by column
+    public class Stream {
+        private final long id;
+        private final byte[] types = new byte[BATCH_EVENTS];
+        private final long[] times = new long[BATCH_EVENTS];
+        private final byte[] pieces = new byte[BATCH_EVENTS];
+        private final int[] xs = new int[BATCH_EVENTS];
+        private final int[] ys = new int[BATCH_EVENTS];
+        private final long[] values = new long[BATCH_EVENTS];
+        private final int[] scoreDeltas = new int[BATCH_EVENTS];
+        private int count = 0;
+        private long lastTime;
+        private long spawnTime;
+
+        Stream(long id) {
+            this.id = id;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        void started(long now, long seed) {
+            add(START, now, 0, 0, 0, seed, 0);
+        }
+
+        void spawned(long now, Shape piece, int x, int y) {
+            spawnTime = now;
+            add(SPAWN, now, piece(piece), x, y, 0, 0);
+        }
+
+        // piece was put on hold and out came the new current piece
+        void held(long now, Shape piece, Shape current) {
+            spawnTime = now;
+            add(HOLD, now, piece(current), 0, 0, piece(piece), 0);
+        }
+
+        void locked(long now, Shape piece, int x, int y) {
+            add(LOCK, now, piece(piece), x, y, now - spawnTime, 0);
+        }
+
+        // Lines and level changes happen as a piece locks, at its time
+        void scored(int lines, int points) {
+            add(LINES, lastTime, 0, 0, 0, lines, points);
+        }
+
+        void levelChanged(int level) {
+            add(LEVEL, lastTime, 0, 0, 0, level, 0);
+        }
+
+        void gameOver(long now, int score) {
+            add(GAME_OVER, now, 0, 0, 0, score, 0);
+        }
+
+        private void add(int type, long time, int piece, int x, int y, long value, int scoreDelta) {
+            // Times are stored as deltas, so they must not go backwards
+            time = Math.max(time, count == 0 ? time : times[count - 1]);
+            types[count] = (byte) type;
+            times[count] = time;
+            pieces[count] = (byte) piece;
+            xs[count] = x;
+            ys[count] = y;
+            values[count] = value;
+            scoreDeltas[count] = scoreDelta;
+            lastTime = time;
+            if (++count == BATCH_EVENTS) {
+                flush();
+            }
+        }
+
+        // Encodes the buffered events into one exactly sized batch and hands it
+        // to the writer
+        public void flush() {
+            if (count == 0) {
+                return;
+            }
+            long first = times[0];
+            int size = varintSize(id) + varintSize(count) + varintSize(zigzag(first)) + 2 * count;
+            long previous = first;
+            for (int i = 0; i < count; i++) {
+                size += varintSize(times[i] - previous) + varintSize(zigzag(xs[i])) + varintSize(zigzag(ys[i]))
+                        + varintSize(zigzag(values[i])) + varintSize(scoreDeltas[i]);
+                previous = times[i];
+            }
+
+            byte[] batch = new byte[size];
+            ByteBuffer out = ByteBuffer.wrap(batch);
+            ReplayRecorder.putVarint(out, id);
+            ReplayRecorder.putVarint(out, count);
+            ReplayRecorder.putVarint(out, zigzag(first));
+            out.put(types, 0, count);
+            previous = first;
+            for (int i = 0; i < count; i++) {
+                ReplayRecorder.putVarint(out, times[i] - previous);
+                previous = times[i];
+            }
+            out.put(pieces, 0, count);
+            for (int i = 0; i < count; i++) {
+                ReplayRecorder.putVarint(out, zigzag(xs[i]));
+            }
+            for (int i = 0; i < count; i++) {
+                ReplayRecorder.putVarint(out, zigzag(ys[i]));
+            }
+            for (int i = 0; i < count; i++) {
+                ReplayRecorder.putVarint(out, zigzag(values[i]));
+            }
+            for (int i = 0; i < count; i++) {
+                ReplayRecorder.putVarint(out, scoreDeltas[i]);
+            }
+            EVENTS.add(count);
+            submit(batch, count);
+            count = 0;
+        }
+    }
+
+    private static int varintSize(long value) {
+        return value == 0 ? 1 : (Long.SIZE - Long.numberOfLeadingZeros(value) + 6) / 7;
+    }
+
+    private static int piece(Shape piece) {
+        return piece == null ? 0 : piece.getShape().ordinal() << 2 | piece.getRotation();
+    }
+
+    private static long zigzag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    // One decoded event
+    public record Event(long stream, int type, long time, Shape.Tetrominoes shape, int rotation,
+                        int x, int y, long value, int scoreDelta) {
+    }
+
+    // Calls visitor with every event in the file, batch by batch
+    public static void read(Path path, Consumer<Event> visitor) throws IOException {
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readByte() != VERSION) {
+                throw new IOException(path + " is not a telemetry file");
+            }
+            Shape.Tetrominoes[] shapes = Shape.Tetrominoes.values();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                ByteBuffer batch = ByteBuffer.wrap(bytes);
+
+                long stream = getVarint(batch);
+                int count = (int) getVarint(batch);
+                long time = unzigzag(getVarint(batch));
+                byte[] types = new byte[count];
+                batch.get(types);
+                long[] times = new long[count];
+                for (int i = 0; i < count; i++) {
+                    time += getVarint(batch);
+                    times[i] = time;
+                }
+                byte[] pieces = new byte[count];
+                batch.get(pieces);
+                long[][] columns = new long[3][count];
+                for (long[] column : columns) {
+                    for (int i = 0; i < count; i++) {
+                        column[i] = unzigzag(getVarint(batch));
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    int p = pieces[i] & 0xFF;
+                    visitor.accept(new Event(stream, types[i], times[i], shapes[p >> 2], p & 3,
+                            (int) columns[0][i], (int) columns[1][i], columns[2][i], (int) getVarint(batch)));
+                }
+            }
+        }
+    }
+
+    private static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long unzigzag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java TelemetryRecorder file");
+            return;
+        }
+        long[] counts = new long[TYPE_NAMES.length];
+        long[] lockTime = new long[2];
+        long[] lines = new long[5];
+        long[] score = new long[1];
+        read(Path.of(args[0]), event -> {
+            counts[event.type()]++;
+            switch (event.type()) {
+                case LOCK -> {
+                    lockTime[0] += event.value();
+                    lockTime[1]++;
+                }
+                case LINES -> {
+                    lines[(int) Math.min(event.value(), 4)]++;
+                    score[0] += event.scoreDelta();
+                }
+                default -> {
+                    // Only counted
+                }
+            }
+        });
+        for (int type = 0; type < TYPE_NAMES.length; type++) {
+            System.out.printf("%-10s %12d%n", TYPE_NAMES[type], counts[type]);
+        }
+        System.out.printf("singles %d, doubles %d, triples %d, tetrises %d, %d points%n",
+                lines[1], lines[2], lines[3], lines[4], score[0]);
+        if (lockTime[1] > 0) {
+            System.out.printf("%.1f ms from spawn to lock on average%n", (double) lockTime[0] / lockTime[1]);
+        }
+    }
+}
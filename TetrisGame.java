@@ -1,20 +1,37 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.IOException;
+import java.nio.file.Path;
 
 public class TetrisGame extends JFrame {
-    private Board board;
+    private Component gameView;
     private boolean isFullScreen = false;
     private Rectangle windowedBounds;
-    private static final int BLOCK_SIZE = 20;
-    private static final int BOARD_WIDTH = 10;
-    private static final int BOARD_HEIGHT = 20;
-    private static final int DEFAULT_WIDTH = BOARD_WIDTH * BLOCK_SIZE + 300; // Extra space for controls
-    private static final int DEFAULT_HEIGHT = BOARD_HEIGHT * BLOCK_SIZE + 40; // Extra padding
+    // The view's size at a scale of one, which resizing keeps the shape of
+    private Dimension viewSize;
+    private static final int CONTROLS_WIDTH = 300; // Extra space for controls
+    private static final int PADDING = 40; // Extra padding
+    private static final int CONTROLS_GAP = 20;
     
     public TetrisGame() {
+        this(false, false);
+    }
+
+    // With gameLoopMode the game runs on a GameLoop thread and renders into a
+    // GameCanvas; otherwise it uses the Swing Timer driven Board. With aiMode
+    // a SearchPlayer plays the Board instead of the keyboard.
+    public TetrisGame(boolean gameLoopMode, boolean aiMode) {
+        this(createView(gameLoopMode, aiMode, new GameEngine(), BoardRenderer.DEFAULT_BLOCK_SIZE));
+    }
+
+    // Frame around an already configured GameCanvas or Board, which is
+    // started once the frame is laid out.
+    public TetrisGame(Component gameView) {
+        this.gameView = gameView;
         setTitle("Tetris");
-        setSize(DEFAULT_WIDTH, DEFAULT_HEIGHT);
+        viewSize = gameView.getPreferredSize();
+        setSize(viewSize.width + CONTROLS_WIDTH, viewSize.height + PADDING);
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
         
@@ -30,12 +47,12 @@ public class TetrisGame extends JFrame {
         gamePanel.setBackground(new Color(30, 30, 30));
         
         // Add board
-        board = new Board();
-        gamePanel.add(board);
+        gamePanel.add(gameView);
         
         // Add controls panel
-        JPanel controlsPanel = createControlsPanel();
-        gamePanel.add(Box.createHorizontalStrut(20)); // Add spacing between board and controls
+        JPanel controlsPanel = createControlsPanel(viewSize.height);
+        controlsPanel.setMaximumSize(controlsPanel.getPreferredSize());
+        gamePanel.add(Box.createHorizontalStrut(CONTROLS_GAP)); // Add spacing between board and controls
         gamePanel.add(controlsPanel);
         
         // Add game panel to center panel
@@ -46,6 +63,15 @@ public class TetrisGame extends JFrame {
         // Add center panel to frame
         add(centerPanel);
 
+        // Grow the view with the window, e.g. in full screen; its renderer
+        // scales the board to whatever size it is given
+        centerPanel.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                fitView(centerPanel, controlsPanel);
+            }
+        });
+
         // Add F11 key listener for fullscreen toggle
         KeyboardFocusManager.getCurrentKeyboardFocusManager().addKeyEventDispatcher(e -> {
             if (e.getID() == KeyEvent.KEY_PRESSED && e.getKeyCode() == KeyEvent.VK_F11) {
@@ -59,20 +85,54 @@ public class TetrisGame extends JFrame {
         addWindowListener(new WindowAdapter() {
             @Override
             public void windowActivated(WindowEvent e) {
-                board.requestFocusInWindow();
+                gameView.requestFocusInWindow();
             }
         });
 
-        board.start();
         pack();
+        if (gameView instanceof GameCanvas canvas) {
+            canvas.start();
+            showMetricsInTitle(canvas.getLoop().getMetrics());
+        } else {
+            ((Board) gameView).start();
+        }
+    }
+
+    private static Component createView(boolean gameLoopMode, boolean aiMode, GameEngine engine, int blockSize) {
+        if (gameLoopMode && aiMode) {
+            throw new IllegalArgumentException("The game loop has no AI player");
+        }
+        if (gameLoopMode) {
+            return new GameCanvas(engine, blockSize, GameLoop.DEFAULT_FPS);
+        }
+        Board board = new Board(engine, blockSize);
+        if (aiMode) {
+            board.setPlayer(new SearchPlayer());
+        }
+        return board;
     }
 
-    private JPanel createControlsPanel() {
+    // The score store, or null when it cannot be opened; the game is still
+    // playable without one
+    private static ScoreStore openScores(Path file) {
+        try {
+            return new ScoreStore(file);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Scores will not be saved: " + e);
+            return null;
+        }
+    }
+
+    private void showMetricsInTitle(FrameMetrics metrics) {
+        new Timer(1000, e -> setTitle("Tetris - " + metrics)).start();
+    }
+
+    private JPanel createControlsPanel(int height) {
         JPanel panel = new JPanel();
         panel.setBackground(new Color(40, 40, 40));
         panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
         panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
-        panel.setPreferredSize(new Dimension(150, DEFAULT_HEIGHT - 40));
+        panel.setPreferredSize(new Dimension(150, height));
         
         // Make panel unfocusable
         panel.setFocusable(false);
@@ -102,6 +162,22 @@ public class TetrisGame extends JFrame {
         return panel;
     }
 
+    // Largest size with the view's own aspect ratio that fits beside the
+    // controls, never smaller than its nominal size
+    private void fitView(JPanel centerPanel, JPanel controlsPanel) {
+        Insets insets = centerPanel.getInsets();
+        int width = centerPanel.getWidth() - insets.left - insets.right
+                - CONTROLS_GAP - controlsPanel.getPreferredSize().width;
+        int height = centerPanel.getHeight() - insets.top - insets.bottom;
+        double scale = Math.max(1, Math.min((double) width / viewSize.width, (double) height / viewSize.height));
+        Dimension size = new Dimension((int) (viewSize.width * scale), (int) (viewSize.height * scale));
+        if (!size.equals(gameView.getPreferredSize())) {
+            gameView.setPreferredSize(size);
+            gameView.setMaximumSize(size);
+            centerPanel.revalidate();
+        }
+    }
+
     private void toggleFullScreen() {
         GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
         GraphicsDevice gd = ge.getDefaultScreenDevice();
@@ -121,14 +197,84 @@ public class TetrisGame extends JFrame {
         
         isFullScreen = !isFullScreen;
         setVisible(true);
-        board.requestFocusInWindow();
+        gameView.requestFocusInWindow();
     }
     
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        boolean gameLoopMode = false;
+        boolean aiMode = false;
+        Path recordDirectory = null;
+        Path scoresFile = null;
+        Path replayFile = null;
+        boolean fastReplay = false;
+        int width = GameEngine.BOARD_WIDTH;
+        int height = GameEngine.BOARD_HEIGHT;
+        int blockSize = 0;
+        int metricsPort = 0;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--game-loop" -> gameLoopMode = true;
+                case "--ai" -> aiMode = true;
+                case "--record" -> recordDirectory = Path.of(args[++i]);
+                case "--replay" -> replayFile = Path.of(args[++i]);
+                case "--fast" -> fastReplay = true;
+                case "--scores" -> scoresFile = Path.of(args[++i]);
+                case "--width" -> width = Integer.parseInt(args[++i]);
+                case "--height" -> height = Integer.parseInt(args[++i]);
+                case "--block-size" -> blockSize = Integer.parseInt(args[++i]);
+                case "--metrics-port" -> metricsPort = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        // GameCanvas only plays from the keyboard, and keeps no recordings or scores
+        if (gameLoopMode && (aiMode || recordDirectory != null || scoresFile != null || replayFile != null)) {
+            throw new IllegalArgumentException("--game-loop cannot be combined with --ai, --record, --scores or --replay");
+        }
+        if (scoresFile == null) {
+            scoresFile = Path.of(System.getProperty("user.home"), ".tetris-scores");
+        }
+
+        // Opened here so a bad file fails before any window appears
+        ReplayPlayer replay = replayFile == null ? null : new ReplayPlayer(replayFile);
+        ScoreStore scores = gameLoopMode ? null : openScores(scoresFile);
+        if (metricsPort > 0) {
+            MetricsRegistry.getDefault().serve(metricsPort);
+        }
+        boolean useGameLoop = gameLoopMode;
+        boolean useAi = aiMode;
+        Path recordTo = recordDirectory;
+        boolean useFastReplay = fastReplay;
+        long seed = System.nanoTime();
+        GameEngine engine = replay != null ? replay.getEngine()
+                : new GameEngine(seed, new WeightedRandomizer(seed), width, height);
+        int requestedBlockSize = blockSize;
         EventQueue.invokeLater(() -> {
-            TetrisGame game = new TetrisGame();
+            // Large boards shrink their blocks to fit on the screen
+            int size = requestedBlockSize;
+            if (size <= 0) {
+                Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+                size = BoardRenderer.fitBlockSize(engine.getWidth(), engine.getHeight(),
+                        screen.width - CONTROLS_WIDTH, screen.height - PADDING * 3);
+            }
+
+            Component view;
+            if (replay != null) {
+                Board board = new Board(engine, size);
+                board.setReplay(replay, useFastReplay);
+                view = board;
+            } else {
+                view = createView(useGameLoop, useAi, engine, size);
+                if (view instanceof Board board) {
+                    if (recordTo != null) {
+                        board.setRecordingDirectory(recordTo);
+                    }
+                    board.setScoreStore(scores);
+                }
+            }
+
+            TetrisGame game = new TetrisGame(view);
             game.setVisible(true);
-            game.board.requestFocusInWindow();
+            game.gameView.requestFocusInWindow();
         });
     }
 }
@@ -0,0 +1,481 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Round-robin tournament between SearchPlayer weight configurations. Every
+// pair of entrants plays a versus match per round: two headless engines with
+// the same seed take turns placing a piece, and clearing lines sends garbage
+// to the other side with the same table as VersusMatch. The first to top out
+// loses. If both reach the piece limit, the one that sent more garbage wins,
+// and equal garbage is a draw.
+//
+// Each match runs on its own virtual thread, at most concurrency at a time,
+// all inside one executor scope: run() returns only once every match it
+// started has finished or been cancelled. Results are appended to the output
+// file as they come in, and match i always has the same pairing and seed, so
+// a cancelled tournament continues where it stopped with --resume. Elo
+// ratings are computed at the end in match order, so they do not depend on
+// scheduling either.
+//
+// Usage: java Tournament [--entrant name=w1,w2,w3,w4]... [--rounds R]
+//                        [--concurrency C] [--seed S] [--max-pieces M]
+//                        [--depth D] [--out file] [--resume]
+public class Tournament {
+    public static final double INITIAL_RATING = 1500;
+    public static final int DEFAULT_MAX_PIECES = 2000;
+    private static final double K_FACTOR = 16;
+    private static final int TABLE_SIZE_LOG2 = 14;
+    private static final int FLUSH_EVERY = 256;
+    private static final String HEADER =
+            "match,first,second,winner,pieces_first,pieces_second,lines_first,lines_second";
+
+    // Outcomes, as stored per match
+    static final byte UNPLAYED = 0;
+    static final byte FIRST_WINS = 1;
+    static final byte SECOND_WINS = 2;
+    static final byte DRAW = 3;
+
+    // A named set of Evaluator weights, in StandardFeature order
+    public record Entrant(String name, double[] weights) {
+        public Entrant {
+            if (name.isEmpty() || name.contains(",")) {
+                throw new IllegalArgumentException("Bad entrant name: '" + name + "'");
+            }
+        }
+
+        // Parses name=w1,w2,...
+        public static Entrant parse(String spec) {
+            int eq = spec.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected name=weights: " + spec);
+            }
+            double[] weights = Arrays.stream(spec.substring(eq + 1).split(","))
+                    .mapToDouble(Double::parseDouble).toArray();
+            return new Entrant(spec.substring(0, eq), weights);
+        }
+    }
+
+    private final List<Entrant> entrants;
+    private final int[][] pairs;
+    private final int rounds;
+    private final long baseSeed;
+    private final int maxPieces;
+    private final int depth;
+    private final int concurrency;
+    private int width = GameEngine.BOARD_WIDTH;
+    private int height = GameEngine.BOARD_HEIGHT;
+    // Idle players per entrant; a SearchPlayer is not thread-safe, so each
+    // match borrows one and there are never more than concurrency of them
+    private final List<ConcurrentLinkedQueue<Player>> idle = new ArrayList<>();
+
+    private final byte[] outcomes;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile boolean cancelled = false;
+    private volatile ExecutorService matches;
+    private volatile Thread scheduler;
+    private BufferedWriter out;
+    private int unflushed = 0;
+
+    public Tournament(List<Entrant> entrants, int rounds, long baseSeed, int maxPieces, int depth,
+                      int concurrency) {
+        if (entrants.size() < 2) {
+            throw new IllegalArgumentException("A tournament needs at least two entrants");
+        }
+        this.entrants = List.copyOf(entrants);
+        this.rounds = rounds;
+        this.baseSeed = baseSeed;
+        this.maxPieces = maxPieces;
+        this.depth = depth;
+        this.concurrency = concurrency;
+
+        int n = entrants.size();
+        pairs = new int[n * (n - 1) / 2][];
+        int p = 0;
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                pairs[p++] = new int[] {a, b};
+            }
+            idle.add(new ConcurrentLinkedQueue<>());
+        }
+        outcomes = new byte[Math.multiplyExact(pairs.length, rounds)];
+    }
+
+    public void setBoardSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getMatchCount() {
+        return outcomes.length;
+    }
+
+    // Entrant playing first in match i; seats swap every round
+    int first(int match) {
+        int[] pair = pairs[match % pairs.length];
+        return pair[(match / pairs.length) & 1];
+    }
+
+    int second(int match) {
+        int[] pair = pairs[match % pairs.length];
+        return pair[1 - ((match / pairs.length) & 1)];
+    }
+
+    // Plays every match not already in the results file, appending each result
+    // as it finishes. Returns the number of matches played in total, which is
+    // less than getMatchCount() if the tournament was cancelled.
+    public int run(Path results, boolean resume) throws IOException, InterruptedException {
+        if (resume && Files.exists(results)) {
+            load(results);
+        } else {
+            Files.writeString(results, HEADER + "\n", StandardCharsets.UTF_8);
+        }
+        out = Files.newBufferedWriter(results, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        scheduler = Thread.currentThread();
+        Semaphore permits = new Semaphore(concurrency);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            matches = executor;
+            for (int i = 0; i < outcomes.length && !cancelled; i++) {
+                if (outcomes[i] != UNPLAYED) {
+                    continue;
+                }
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    // Cancelled while waiting for a free slot
+                    break;
+                }
+                int match = i;
+                try {
+                    executor.submit(() -> {
+                        try {
+                            playAndRecord(match);
+                        } catch (Throwable t) {
+                            // One failed match stops the whole tournament
+                            failure.compareAndSet(null, t);
+                            cancel();
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // Cancelled between acquiring the slot and starting the match
+                    break;
+                }
+            }
+        } finally {
+            // Closing the executor above waited for every match thread
+            matches = null;
+            scheduler = null;
+            Thread.interrupted();
+            synchronized (this) {
+                out.close();
+            }
+        }
+
+        Throwable t = failure.get();
+        if (t instanceof IOException e) {
+            throw e;
+        } else if (t != null) {
+            throw new IllegalStateException("Match failed", t);
+        }
+        return getPlayedCount();
+    }
+
+    // Stops scheduling matches and interrupts the ones running, which end
+    // without a result. Safe to call from any thread, e.g. a shutdown hook.
+    public void cancel() {
+        cancelled = true;
+        ExecutorService executor = matches;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        Thread thread = scheduler;
+        if (thread != null && thread != Thread.currentThread()) {
+            thread.interrupt();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public int getPlayedCount() {
+        int played = 0;
+        for (byte outcome : outcomes) {
+            if (outcome != UNPLAYED) {
+                played++;
+            }
+        }
+        return played;
+    }
+
+    private void playAndRecord(int match) throws IOException {
+        int a = first(match);
+        int b = second(match);
+        Player[] players = {borrow(a), borrow(b)};
+        GameEngine[] engines = new GameEngine[2];
+        long seed = BatchRunner.gameSeed(baseSeed, match);
+        for (int i = 0; i < 2; i++) {
+            engines[i] = new GameEngine(seed, new WeightedRandomizer(seed), width, height);
+        }
+        byte outcome;
+        try {
+            outcome = playMatch(engines, players, seed, maxPieces, new ArrayList<>());
+        } finally {
+            idle.get(a).add(players[0]);
+            idle.get(b).add(players[1]);
+        }
+        if (outcome == UNPLAYED) {
+            return;
+        }
+        String winner = switch (outcome) {
+            case FIRST_WINS -> entrants.get(a).name();
+            case SECOND_WINS -> entrants.get(b).name();
+            default -> "draw";
+        };
+        String line = match + "," + entrants.get(a).name() + "," + entrants.get(b).name() + "," + winner
+                + "," + engines[0].getPiecesPlaced() + "," + engines[1].getPiecesPlaced()
+                + "," + engines[0].getLinesCleared() + "," + engines[1].getLinesCleared() + "\n";
+        synchronized (this) {
+            out.write(line);
+            if (++unflushed >= FLUSH_EVERY) {
+                out.flush();
+                unflushed = 0;
+            }
+            outcomes[match] = outcome;
+        }
+    }
+
+    private Player borrow(int entrant) {
+        Player player = idle.get(entrant).poll();
+        if (player == null) {
+            player = new SearchPlayer(new Evaluator(entrants.get(entrant).weights()), depth, TABLE_SIZE_LOG2);
+        }
+        return player;
+    }
+
+    // Plays one match to the end. The two sides alternate single pieces, and
+    // the lines each piece clears send garbage to the other. Returns UNPLAYED
+    // if the thread was interrupted first.
+    static byte playMatch(GameEngine[] engines, Player[] players, long seed, int maxPieces,
+                          List<GameInput> inputs) {
+        SeededRandom holes = new SeededRandom(~seed);
+        int[] lines = new int[2];
+        int[] sent = new int[2];
+        for (GameEngine engine : engines) {
+            engine.start(0, seed);
+        }
+        while (engines[0].getPiecesPlaced() < maxPieces || engines[1].getPiecesPlaced() < maxPieces) {
+            if (Thread.currentThread().isInterrupted()) {
+                return UNPLAYED;
+            }
+            for (int side = 0; side < 2; side++) {
+                GameEngine engine = engines[side];
+                GameEngine opponent = engines[1 - side];
+                int placed = engine.getPiecesPlaced();
+                inputs.clear();
+                players[side].plan(engine, inputs);
+                for (int i = 0; i < inputs.size(); i++) {
+                    engine.apply(inputs.get(i), 0);
+                }
+                if (engine.getPiecesPlaced() == placed && !engine.isGameOver()) {
+                    engine.apply(GameInput.HARD_DROP, 0);
+                }
+                if (engine.isGameOver()) {
+                    return side == 0 ? SECOND_WINS : FIRST_WINS;
+                }
+
+                int garbage = VersusMatch.garbageFor(engine.getLinesCleared() - lines[side]);
+                lines[side] = engine.getLinesCleared();
+                if (garbage > 0) {
+                    sent[side] += garbage;
+                    opponent.addGarbage(garbage, holes.nextInt(opponent.getWidth()), 0);
+                    if (opponent.isGameOver()) {
+                        return side == 0 ? FIRST_WINS : SECOND_WINS;
+                    }
+                }
+            }
+        }
+        return sent[0] > sent[1] ? FIRST_WINS : sent[1] > sent[0] ? SECOND_WINS : DRAW;
+    }
+
+    // Marks the matches already in a results file as played
+    private void load(Path results) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(results, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IOException(results + " is not a tournament results file");
+            }
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length < 4) {
+                    // A line cut short when the last run was killed
+                    continue;
+                }
+                int match = Integer.parseInt(fields[0]);
+                if (match >= outcomes.length
+                        || !fields[1].equals(entrants.get(first(match)).name())
+                        || !fields[2].equals(entrants.get(second(match)).name())) {
+                    throw new IOException(results + " is from a different tournament (match " + match + ")");
+                }
+                outcomes[match] = fields[3].equals(fields[1]) ? FIRST_WINS
+                        : fields[3].equals(fields[2]) ? SECOND_WINS : DRAW;
+            }
+        }
+        // Continue on a fresh line if the file ended mid-record
+        try (SeekableByteChannel channel = Files.newByteChannel(results, StandardOpenOption.READ)) {
+            if (channel.size() > 0) {
+                ByteBuffer last = ByteBuffer.allocate(1);
+                channel.position(channel.size() - 1).read(last);
+                if (last.get(0) != '\n') {
+                    Files.writeString(results, "\n", StandardOpenOption.APPEND);
+                }
+            }
+        }
+    }
+
+    // Elo ratings after applying every played match in match order
+    public double[] ratings() {
+        double[] ratings = new double[entrants.size()];
+        Arrays.fill(ratings, INITIAL_RATING);
+        for (int i = 0; i < outcomes.length; i++) {
+            if (outcomes[i] == UNPLAYED) {
+                continue;
+            }
+            int a = first(i);
+            int b = second(i);
+            double expected = 1 / (1 + Math.pow(10, (ratings[b] - ratings[a]) / 400));
+            double actual = switch (outcomes[i]) {
+                case FIRST_WINS -> 1;
+                case SECOND_WINS -> 0;
+                default -> 0.5;
+            };
+            ratings[a] += K_FACTOR * (actual - expected);
+            ratings[b] -= K_FACTOR * (actual - expected);
+        }
+        return ratings;
+    }
+
+    // Standings table, best rating first
+    public String standings() {
+        int n = entrants.size();
+        int[][] record = new int[n][3];
+        for (int i = 0; i < outcomes.length; i++) {
+            switch (outcomes[i]) {
+                case FIRST_WINS -> {
+                    record[first(i)][0]++;
+                    record[second(i)][2]++;
+                }
+                case SECOND_WINS -> {
+                    record[second(i)][0]++;
+                    record[first(i)][2]++;
+                }
+                case DRAW -> {
+                    record[first(i)][1]++;
+                    record[second(i)][1]++;
+                }
+                default -> {
+                    // Not played yet
+                }
+            }
+        }
+        double[] ratings = ratings();
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> Double.compare(ratings[y], ratings[x]));
+
+        StringBuilder sb = new StringBuilder(
+                String.format("%-16s %7s %6s %6s %6s%n", "entrant", "elo", "won", "drawn", "lost"));
+        for (int i : order) {
+            sb.append(String.format("%-16s %7.1f %6d %6d %6d%n", entrants.get(i).name(), ratings[i],
+                    record[i][0], record[i][1], record[i][2]));
+        }
+        return sb.toString();
+    }
+
+    static List<Entrant> defaultEntrants() {
+        double[] w = Evaluator.DEFAULT_WEIGHTS;
+        return List.of(
+                new Entrant("default", w.clone()),
+                new Entrant("digger", new double[] {w[0], w[1], w[2] * 2, w[3]}),
+                new Entrant("flat", new double[] {w[0], w[1], w[2], w[3] * 2}),
+                new Entrant("greedy", new double[] {w[0] / 2, w[1] * 2, w[2], w[3]}));
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<Entrant> entrants = new ArrayList<>();
+        int rounds = 10;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        int maxPieces = DEFAULT_MAX_PIECES;
+        int depth = 1;
+        String results = "tournament.csv";
+        boolean resume = false;
+        int width = GameEngine.BOARD_WIDTH;
+        int height = GameEngine.BOARD_HEIGHT;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--entrant" -> entrants.add(Entrant.parse(args[++i]));
+                case "--rounds" -> rounds = Integer.parseInt(args[++i]);
+                case "--concurrency" -> concurrency = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--max-pieces" -> maxPieces = Integer.parseInt(args[++i]);
+                case "--depth" -> depth = Integer.parseInt(args[++i]);
+                case "--out" -> results = args[++i];
+                case "--resume" -> resume = true;
+                case "--width" -> width = Integer.parseInt(args[++i]);
+                case "--height" -> height = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (entrants.isEmpty()) {
+            entrants = defaultEntrants();
+        }
+
+        Tournament tournament = new Tournament(entrants, rounds, seed, maxPieces, depth, concurrency);
+        tournament.setBoardSize(width, height);
+        // Ctrl-C stops the tournament cleanly: running matches are dropped,
+        // finished ones are flushed and the standings so far are printed
+        CountDownLatch done = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            tournament.cancel();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        try {
+            long start = System.nanoTime();
+            int played = tournament.run(Path.of(results), resume);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.print(tournament.standings());
+            System.out.printf("%d of %d matches played, %.2f s%n", played, tournament.getMatchCount(), seconds);
+            if (tournament.isCancelled()) {
+                System.out.println("Cancelled; run again with --resume to finish");
+            }
+        } finally {
+            done.countDown();
+        }
+    }
+}
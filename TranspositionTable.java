@@ -0,0 +1,57 @@
+import java.util.Arrays;
+
+// Bounded, direct-mapped cache of search values keyed by 64-bit Zobrist hash.
+// A colliding entry simply replaces the old one, so memory stays fixed no
+// matter how long the search runs. Not thread-safe.
+public class TranspositionTable {
+    private static final long EMPTY = 0;
+
+    private final long[] keys;
+    private final double[] values;
+    private final int mask;
+    private long hits;
+    private long misses;
+
+    // Table with 2^sizeLog2 entries
+    public TranspositionTable(int sizeLog2) {
+        int size = 1 << sizeLog2;
+        keys = new long[size];
+        values = new double[size];
+        mask = size - 1;
+    }
+
+    // Stored value for key, or NaN when it is not in the table
+    public double get(long key) {
+        key = nonEmpty(key);
+        int index = (int) (key ^ (key >>> 32)) & mask;
+        if (keys[index] == key) {
+            hits++;
+            return values[index];
+        }
+        misses++;
+        return Double.NaN;
+    }
+
+    public void put(long key, double value) {
+        key = nonEmpty(key);
+        int index = (int) (key ^ (key >>> 32)) & mask;
+        keys[index] = key;
+        values[index] = value;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    private static long nonEmpty(long key) {
+        return key == EMPTY ? 1 : key;
+    }
+}
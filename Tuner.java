@@ -0,0 +1,351 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Genetic optimizer for the Evaluator weights. Each generation every
+// candidate plays the same seeded games (common random numbers), so
+// differences in fitness come from the weights and not from luck with the
+// pieces. Fitness is the mean score. The best candidates survive unchanged
+// and the rest of the population is refilled with mutated crossovers of them.
+//
+// The games of a generation are played in stages on a work-stealing
+// ForkJoinPool, one task per candidate and game. After each stage, candidates
+// whose mean so far is below EARLY_STOP_FRACTION of the worst elite are
+// dropped from the remaining stages; they could not have been selected
+// anyway, and bad weights tend to play the longest games.
+//
+// The population is written to a checkpoint file after every generation, so
+// a long run can be stopped and continued with --resume.
+//
+// Usage: java Tuner [--generations G] [--population P] [--elite E] [--games N]
+//                   [--max-pieces M] [--depth D] [--seed S] [--threads T]
+//                   [--checkpoint file] [--resume]
+public class Tuner {
+    static final double EARLY_STOP_FRACTION = 0.5;
+    private static final int STAGES = 4;
+    private static final int TABLE_SIZE_LOG2 = 12;
+    private static final double MUTATION_SIGMA = 0.15;
+    private static final String CHECKPOINT_HEADER = "# tuner checkpoint";
+
+    // One weight vector and how it did in the last generation
+    static class Candidate {
+        final double[] weights;
+        double fitness = Double.NaN;
+        int gamesPlayed;
+        boolean dropped;
+
+        Candidate(double[] weights) {
+            this.weights = weights;
+        }
+    }
+
+    private final int populationSize;
+    private final int elite;
+    private final int games;
+    private final int maxPieces;
+    private final int depth;
+    private final long baseSeed;
+    private final ForkJoinPool pool;
+    private final SeededRandom random;
+    private List<Candidate> population = new ArrayList<>();
+    private int generation = 0;
+    private long gamesPlayed = 0;
+    private long gamesSkipped = 0;
+
+    public Tuner(int populationSize, int elite, int games, int maxPieces, int depth, long baseSeed,
+                 int threads) {
+        if (elite < 1 || elite >= populationSize) {
+            throw new IllegalArgumentException("elite must be in [1, " + populationSize + "): " + elite);
+        }
+        this.populationSize = populationSize;
+        this.elite = elite;
+        this.games = games;
+        this.maxPieces = maxPieces;
+        this.depth = depth;
+        this.baseSeed = baseSeed;
+        this.pool = new ForkJoinPool(threads);
+        this.random = new SeededRandom(~baseSeed);
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public Candidate best() {
+        return population.get(0);
+    }
+
+    // A population spread around the default weights
+    public void initialize() {
+        population.clear();
+        population.add(new Candidate(normalized(Evaluator.DEFAULT_WEIGHTS.clone())));
+        while (population.size() < populationSize) {
+            double[] weights = new double[Evaluator.DEFAULT_WEIGHTS.length];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = random.nextDouble() * 2 - 1;
+            }
+            population.add(new Candidate(normalized(weights)));
+        }
+        generation = 0;
+    }
+
+    // Plays one generation, ranks the population by games played, then fitness,
+    // and breeds the next.
+    // Returns the evaluated population, best first, before breeding.
+    public List<Candidate> step() {
+        evaluate();
+        List<Candidate> ranked = new ArrayList<>(population);
+        // Means over different numbers of games do not compare, so candidates
+        // dropped early rank below every one that played all the games
+        ranked.sort(Comparator.comparingInt((Candidate c) -> c.gamesPlayed)
+                .thenComparingDouble(c -> c.fitness).reversed());
+
+        List<Candidate> next = new ArrayList<>(populationSize);
+        for (int i = 0; i < elite; i++) {
+            next.add(new Candidate(ranked.get(i).weights));
+        }
+        while (next.size() < populationSize) {
+            double[] a = ranked.get(random.nextInt(elite)).weights;
+            double[] b = ranked.get(random.nextInt(elite)).weights;
+            double[] child = new double[a.length];
+            for (int i = 0; i < child.length; i++) {
+                child[i] = (random.nextDouble() < 0.5 ? a[i] : b[i]) + MUTATION_SIGMA * nextGaussian();
+            }
+            next.add(new Candidate(normalized(child)));
+        }
+        population = next;
+        generation++;
+        return ranked;
+    }
+
+    // Plays this generation's games for every candidate, in stages
+    private void evaluate() {
+        int n = population.size();
+        long[][] scores = new long[n][games];
+        for (Candidate c : population) {
+            c.gamesPlayed = 0;
+            c.dropped = false;
+        }
+        // The same seeds for every candidate, fresh ones every generation
+        long[] seeds = new long[games];
+        for (int g = 0; g < games; g++) {
+            seeds[g] = BatchRunner.gameSeed(baseSeed, generation * games + g);
+        }
+
+        int stageSize = Math.max(1, (games + STAGES - 1) / STAGES);
+        for (int from = 0; from < games; from += stageSize) {
+            int to = Math.min(games, from + stageSize);
+            List<int[]> jobs = new ArrayList<>();
+            for (int c = 0; c < n; c++) {
+                if (!population.get(c).dropped) {
+                    for (int g = from; g < to; g++) {
+                        jobs.add(new int[] {c, g});
+                    }
+                }
+            }
+            pool.invoke(new Games(jobs, 0, jobs.size(), seeds, scores));
+
+            for (int c = 0; c < n; c++) {
+                Candidate candidate = population.get(c);
+                if (!candidate.dropped) {
+                    candidate.gamesPlayed = to;
+                    long total = 0;
+                    for (int g = 0; g < to; g++) {
+                        total += scores[c][g];
+                    }
+                    candidate.fitness = (double) total / to;
+                }
+            }
+            gamesPlayed += jobs.size();
+            if (to < games) {
+                dropHopeless(to);
+            }
+        }
+    }
+
+    // Drops candidates far behind the worst elite on the games played so far
+    private void dropHopeless(int played) {
+        double[] fitness = population.stream().filter(c -> !c.dropped)
+                .mapToDouble(c -> c.fitness).sorted().toArray();
+        if (fitness.length <= elite) {
+            return;
+        }
+        double cutoff = EARLY_STOP_FRACTION * fitness[fitness.length - elite];
+        for (Candidate c : population) {
+            if (!c.dropped && c.fitness < cutoff) {
+                c.dropped = true;
+                gamesSkipped += games - played;
+            }
+        }
+    }
+
+    // Plays jobs[from, to), splitting the range until each task is one game
+    private class Games extends RecursiveAction {
+        private final List<int[]> jobs;
+        private final int from;
+        private final int to;
+        private final long[] seeds;
+        private final long[][] scores;
+
+        Games(List<int[]> jobs, int from, int to, long[] seeds, long[][] scores) {
+            this.jobs = jobs;
+            this.from = from;
+            this.to = to;
+            this.seeds = seeds;
+            this.scores = scores;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Games(jobs, from, mid, seeds, scores), new Games(jobs, mid, to, seeds, scores));
+                return;
+            }
+            if (to == from) {
+                return;
+            }
+            int c = jobs.get(from)[0];
+            int g = jobs.get(from)[1];
+            Player player = new SearchPlayer(new Evaluator(population.get(c).weights), depth, TABLE_SIZE_LOG2);
+            GameEngine engine = new GameEngine(seeds[g]);
+            scores[c][g] = BatchRunner.playGame(engine, player, seeds[g], maxPieces, new ArrayList<>()).score();
+        }
+    }
+
+    // Scales weights to unit length; an evaluator only ranks boards, so the
+    // direction of the vector is all that matters
+    static double[] normalized(double[] weights) {
+        double norm = 0;
+        for (double w : weights) {
+            norm += w * w;
+        }
+        norm = Math.sqrt(norm);
+        if (norm > 0) {
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] /= norm;
+            }
+        }
+        return weights;
+    }
+
+    private double nextGaussian() {
+        // Box-Muller, discarding the second value
+        double u = 1 - random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    // Writes the population to be bred next, replacing the file atomically so
+    // a crash mid-write leaves the previous checkpoint intact
+    public void saveCheckpoint(Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            out.write(CHECKPOINT_HEADER + "\n");
+            out.write("generation " + generation + "\n");
+            out.write("random " + random.getState() + "\n");
+            for (Candidate c : population) {
+                StringBuilder line = new StringBuilder("candidate");
+                for (double w : c.weights) {
+                    line.append(' ').append(w);
+                }
+                out.write(line.append('\n').toString());
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void loadCheckpoint(Path path) throws IOException {
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(CHECKPOINT_HEADER)) {
+            throw new IOException(path + " is not a tuner checkpoint");
+        }
+        population.clear();
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split(" ");
+            switch (fields[0]) {
+                case "generation" -> generation = Integer.parseInt(fields[1]);
+                case "random" -> random.setState(Long.parseLong(fields[1]));
+                case "candidate" -> population.add(new Candidate(Arrays.stream(fields, 1, fields.length)
+                        .mapToDouble(Double::parseDouble).toArray()));
+                default -> throw new IOException("Unexpected line in " + path + ": " + line);
+            }
+        }
+        if (population.size() != populationSize) {
+            throw new IOException(path + " has " + population.size() + " candidates, expected " + populationSize);
+        }
+    }
+
+    static String format(double[] weights) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < weights.length; i++) {
+            sb.append(i == 0 ? "" : ",").append(String.format("%.6f", weights[i]));
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int generations = 20;
+        int populationSize = 24;
+        int elite = 6;
+        int games = 16;
+        int maxPieces = 1000;
+        int depth = 1;
+        long seed = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String checkpoint = "tuner.checkpoint";
+        boolean resume = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--generations" -> generations = Integer.parseInt(args[++i]);
+                case "--population" -> populationSize = Integer.parseInt(args[++i]);
+                case "--elite" -> elite = Integer.parseInt(args[++i]);
+                case "--games" -> games = Integer.parseInt(args[++i]);
+                case "--max-pieces" -> maxPieces = Integer.parseInt(args[++i]);
+                case "--depth" -> depth = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--checkpoint" -> checkpoint = args[++i];
+                case "--resume" -> resume = true;
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        Tuner tuner = new Tuner(populationSize, elite, games, maxPieces, depth, seed, threads);
+        Path path = Path.of(checkpoint);
+        if (resume && Files.exists(path)) {
+            tuner.loadCheckpoint(path);
+            System.out.println("Resuming at generation " + tuner.getGeneration());
+        } else {
+            tuner.initialize();
+        }
+
+        double[] best = null;
+        while (tuner.getGeneration() < generations) {
+            long start = System.nanoTime();
+            List<Candidate> ranked = tuner.step();
+            tuner.saveCheckpoint(path);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            Candidate top = ranked.get(0);
+            long dropped = ranked.stream().filter(c -> c.dropped).count();
+            best = top.weights;
+            System.out.printf("generation %d: best %.0f, median %.0f, %d dropped early, %.1f s  %s%n",
+                    tuner.getGeneration(), top.fitness, ranked.get(ranked.size() / 2).fitness, dropped,
+                    seconds, format(top.weights));
+        }
+        System.out.printf("%d games played, %d skipped by early termination%n", tuner.gamesPlayed,
+                tuner.gamesSkipped);
+        if (best != null) {
+            System.out.println("Best weights (as a Tournament entrant): --entrant tuned=" + format(best));
+        }
+    }
+}
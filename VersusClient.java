@@ -0,0 +1,388 @@
+import javax.swing.*;
+import java.awt.*;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+// Client side of versus play. Sends GameInputs to a VersusServer and rebuilds
+// both boards from its delta messages: a piece lock is replayed onto the
+// mirrored Playfield, which clears the same lines the server did, so no full
+// board ever crosses the wire.
+//
+// The reader thread applies messages to its own GameStates and, whenever it
+// has caught up with the socket, publishes them; takeLatest then restores the
+// newest state of a board into an engine for a Board to render or a bot to
+// plan with.
+//
+// Usage: java VersusClient [--host H] [--port P]
+//        java VersusClient --bots N [--player random|search] [--delay ms]
+public class VersusClient implements Closeable {
+    public static final int YOU = 0;
+    public static final int OPPONENT = 1;
+    private static final int DEFAULT_BOT_DELAY = 250;
+    private static final int STATUS_INTERVAL = 10_000;
+
+    // Told about server messages, on the reader thread
+    public interface Listener {
+        void started(int width, int height);
+
+        void updated();
+
+        void finished(boolean won);
+    }
+
+    private final SocketChannel channel;
+    private final DataInputStream in;
+    private final ByteBuffer out = ByteBuffer.allocate(1);
+
+    // Reader thread only
+    private final GameState[] working = new GameState[2];
+    private final boolean[] changed = new boolean[2];
+
+    // Guarded by this
+    private final GameState[] latest = new GameState[2];
+    private final boolean[] fresh = new boolean[2];
+
+    public VersusClient(InetSocketAddress address) throws IOException {
+        channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+    }
+
+    // Empty engine of the right kind for takeLatest to restore boards into
+    public static GameEngine newMirror(int width, int height) {
+        return new GameEngine(0, new WeightedRandomizer(0), width, height);
+    }
+
+    public synchronized void send(GameInput input) throws IOException {
+        out.clear();
+        out.put((byte) input.ordinal());
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+    }
+
+    // Restores the newest state of board YOU or OPPONENT into engine, which
+    // must come from newMirror. Returns false if it has not changed since.
+    public synchronized boolean takeLatest(int side, GameEngine engine) {
+        if (!fresh[side]) {
+            return false;
+        }
+        engine.restoreState(latest[side]);
+        fresh[side] = false;
+        return true;
+    }
+
+    // Reads messages until the server disconnects
+    public void run(Listener listener) throws IOException {
+        while (true) {
+            int type = in.read();
+            if (type < 0) {
+                return;
+            }
+            int side = (type & VersusMatch.OPPONENT) != 0 ? OPPONENT : YOU;
+            GameState state = working[side];
+            if (state == null && (type & ~VersusMatch.OPPONENT) != VersusMatch.START) {
+                throw new IOException("Message " + type + " before the match started");
+            }
+
+            switch (type & ~VersusMatch.OPPONENT) {
+                case VersusMatch.START -> {
+                    int width = readVarint();
+                    int height = readVarint();
+                    for (int i = 0; i < 2; i++) {
+                        resetState(i, width, height);
+                    }
+                    listener.started(width, height);
+                }
+                case VersusMatch.PIECE -> {
+                    state.currentPiece = readPiece();
+                    state.currentX = readZigzag();
+                    state.currentY = readZigzag();
+                }
+                case VersusMatch.LOCK -> {
+                    Shape piece = readPiece();
+                    int x = readZigzag();
+                    int y = readZigzag();
+                    int lines = readVarint();
+                    if (!state.field.canPlace(piece, x, y)) {
+                        throw new IOException("Lock at " + x + "," + y + " overlaps the mirrored stack");
+                    }
+                    state.field.lock(piece, x, y);
+                    state.piecesPlaced++;
+                    state.pieceCounts[piece.getShape().ordinal()]++;
+                    if (state.field.clearFullLines() != lines) {
+                        throw new IOException("Mirrored stack cleared a different number of lines than " + lines);
+                    }
+                }
+                case VersusMatch.GARBAGE -> {
+                    int lines = readVarint();
+                    state.field.addGarbage(lines, readVarint());
+                }
+                case VersusMatch.QUEUE -> {
+                    int hold = in.readUnsignedByte();
+                    state.holdPiece = hold == 0 ? null : Shape.of(Shape.shapeOf(hold));
+                    state.canHold = in.readUnsignedByte() != 0;
+                    for (int i = 0; i < GameEngine.NUM_NEXT_PIECES; i++) {
+                        state.queue[i] = Shape.shapeOf(in.readUnsignedByte());
+                    }
+                }
+                case VersusMatch.SCORE -> {
+                    state.score = readVarint();
+                    state.level = readVarint();
+                    state.linesCleared = readVarint();
+                }
+                case VersusMatch.GAME_OVER -> {
+                    boolean won = in.readUnsignedByte() != 0;
+                    working[YOU].isGameOver = true;
+                    working[OPPONENT].isGameOver = true;
+                    changed[YOU] = true;
+                    changed[OPPONENT] = true;
+                    publish(listener);
+                    listener.finished(won);
+                    continue;
+                }
+                default -> throw new IOException("Unknown message type " + type);
+            }
+            changed[side] = true;
+
+            // Publish once caught up, not after every message of a burst
+            if (in.available() == 0) {
+                publish(listener);
+            }
+        }
+    }
+
+    private void resetState(int side, int width, int height) {
+        GameState state = working[side];
+        if (state == null || state.getWidth() != width || state.getHeight() != height) {
+            state = new GameState(width, height);
+            working[side] = state;
+            synchronized (this) {
+                latest[side] = new GameState(width, height);
+            }
+        }
+        state.field.clear();
+        state.randomizer = "weighted";
+        state.currentPiece = Shape.of(Shape.Tetrominoes.NoShape);
+        state.holdPiece = null;
+        state.canHold = true;
+        state.isStarted = true;
+        state.isGameOver = false;
+        state.score = 0;
+        state.level = 1;
+        state.linesCleared = 0;
+        state.piecesPlaced = 0;
+        Arrays.fill(state.pieceCounts, 0);
+        Arrays.fill(state.queue, Shape.Tetrominoes.NoShape);
+        state.queueSize = GameEngine.NUM_NEXT_PIECES;
+        changed[side] = true;
+    }
+
+    private void publish(Listener listener) {
+        synchronized (this) {
+            for (int i = 0; i < 2; i++) {
+                if (changed[i]) {
+                    latest[i].copyFrom(working[i]);
+                    fresh[i] = true;
+                    changed[i] = false;
+                }
+            }
+        }
+        listener.updated();
+    }
+
+    private Shape readPiece() throws IOException {
+        int b = in.readUnsignedByte();
+        int shape = b >>> 2;
+        if (shape >= Shape.Tetrominoes.values().length) {
+            throw new IOException("Unknown piece " + shape);
+        }
+        return Shape.of(Shape.shapeOf(shape), b & (Shape.NUM_ROTATIONS - 1));
+    }
+
+    private int readZigzag() throws IOException {
+        int value = readVarint();
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Server closed the connection mid-message");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Headless bot that plans each new piece on its mirrored board and sends
+    // the whole plan after delay ms, like a quick human
+    private static void playBot(InetSocketAddress address, Player player, int delay, AtomicLong matchesPlayed) {
+        try (VersusClient client = new VersusClient(address)) {
+            List<GameInput> plan = new ArrayList<>();
+            client.run(new Listener() {
+                private GameEngine mirror;
+                private int plannedAt = -1;
+
+                @Override
+                public void started(int width, int height) {
+                    if (mirror == null || mirror.getWidth() != width || mirror.getHeight() != height) {
+                        mirror = newMirror(width, height);
+                    }
+                    plannedAt = -1;
+                }
+
+                @Override
+                public void updated() {
+                    if (!client.takeLatest(YOU, mirror) || mirror.isGameOver()
+                            || mirror.getCurrentPiece().getShape() == Shape.Tetrominoes.NoShape
+                            || mirror.getPiecesPlaced() == plannedAt) {
+                        return;
+                    }
+                    plannedAt = mirror.getPiecesPlaced();
+                    plan.clear();
+                    player.plan(mirror, plan);
+                    try {
+                        Thread.sleep(delay);
+                        for (GameInput input : plan) {
+                            client.send(input);
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+
+                @Override
+                public void finished(boolean won) {
+                    matchesPlayed.incrementAndGet();
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Bot disconnected: " + e);
+        }
+    }
+
+    // Window with your board, driven by the keyboard, next to your
+    // opponent's. Call on the EDT; fills boards with the two Boards.
+    private static void showWindow(VersusClient client, int width, int height, Board[] boards) {
+        int blockSize = BoardRenderer.DEFAULT_BLOCK_SIZE;
+        for (int side = YOU; side <= OPPONENT; side++) {
+            boards[side] = new Board(newMirror(width, height), blockSize);
+            boards[side].setRemote(client, side);
+        }
+        boards[OPPONENT].setFocusable(false);
+
+        JFrame frame = new JFrame("Tetris versus");
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        JPanel panel = new JPanel(new GridLayout(1, 2, 20, 0));
+        panel.setBackground(new Color(30, 30, 30));
+        panel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
+        panel.add(boards[YOU]);
+        panel.add(boards[OPPONENT]);
+        frame.add(panel);
+        frame.pack();
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+        boards[YOU].requestFocusInWindow();
+        for (Board board : boards) {
+            board.remoteUpdated();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = "localhost";
+        int port = VersusServer.DEFAULT_PORT;
+        int bots = 0;
+        String player = "random";
+        int delay = DEFAULT_BOT_DELAY;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--host" -> host = args[++i];
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                case "--bots" -> bots = Integer.parseInt(args[++i]);
+                case "--player" -> player = args[++i];
+                case "--delay" -> delay = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        InetSocketAddress address = new InetSocketAddress(host, port);
+
+        if (bots > 0) {
+            // One virtual thread per bot, so thousands of them stay cheap
+            LongFunction<Player> players = BatchRunner.playerFactory(player);
+            AtomicLong matchesPlayed = new AtomicLong();
+            ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+            for (int i = 0; i < bots; i++) {
+                Player bot = players.apply(i);
+                int botDelay = delay;
+                executor.submit(() -> playBot(address, bot, botDelay, matchesPlayed));
+            }
+            // Lets isTerminated report when the last bot has stopped
+            executor.shutdown();
+            while (!executor.isTerminated()) {
+                Thread.sleep(STATUS_INTERVAL);
+                System.out.println(bots + " bots, " + matchesPlayed.get() / 2 + " matches finished");
+            }
+            return;
+        }
+
+        VersusClient client = new VersusClient(address);
+        // Only touched on the EDT
+        Board[] boards = new Board[2];
+        client.run(new Listener() {
+            private boolean shown = false;
+
+            @Override
+            public void started(int width, int height) {
+                if (!shown) {
+                    shown = true;
+                    EventQueue.invokeLater(() -> showWindow(client, width, height, boards));
+                }
+            }
+
+            @Override
+            public void updated() {
+                EventQueue.invokeLater(() -> {
+                    for (Board board : boards) {
+                        if (board != null) {
+                            board.remoteUpdated();
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void finished(boolean won) {
+                System.out.println(won ? "You won" : "You lost");
+            }
+        });
+        System.out.println("Server closed the connection");
+        System.exit(0);
+    }
+}
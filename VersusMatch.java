@@ -0,0 +1,254 @@
+import java.nio.ByteBuffer;
+
+// One versus game between two connections, run entirely on the server's
+// selector thread. Both players get the same seed, so they face the same
+// piece sequence. Clearing two or more lines at once sends garbage to the
+// opponent, and the first player to top out loses.
+//
+// After every input, gravity step or garbage, sync() compares the engine
+// with what its player was last told and sends only the differences. The
+// same messages go to the opponent with the OPPONENT flag set, so each
+// client can mirror both boards.
+//
+// Server to client messages, one type byte then varints:
+//   START     board width, board height
+//   PIECE     piece, x, y           the current piece moved, rotated or spawned
+//   LOCK      piece, x, y, lines    a piece locked there and cleared lines
+//   GARBAGE   lines, hole column    garbage rows were pushed up under the stack
+//   QUEUE     hold, can hold, next pieces
+//   SCORE     score, level, lines
+//   GAME_OVER 1 if the receiver won
+// A piece is its shape ordinal << 2 | its rotation; x and y are zigzag
+// encoded. Client to server messages are one GameInput ordinal per byte.
+class VersusMatch {
+    static final int START = 1;
+    static final int PIECE = 2;
+    static final int LOCK = 3;
+    static final int GARBAGE = 4;
+    static final int QUEUE = 5;
+    static final int SCORE = 6;
+    static final int GAME_OVER = 7;
+    static final int OPPONENT = 0x80;
+
+    // Garbage rows sent for clearing 0 to 4 lines at once
+    private static final int[] GARBAGE_FOR_LINES = {0, 0, 1, 2, 4};
+    static final int MAX_MESSAGE_BYTES = 2 + GameEngine.NUM_NEXT_PIECES + 4 * 5;
+
+    private final VersusServer server;
+    private final Side[] sides = new Side[2];
+    private final SeededRandom holes;
+    private final ByteBuffer message;
+    private boolean over = false;
+
+    VersusMatch(VersusServer server, VersusServer.Connection first, VersusServer.Connection second,
+                long seed, int width, int height, long now) {
+        this.server = server;
+        this.message = server.messageBuffer();
+        holes = new SeededRandom(~seed);
+        VersusServer.Connection[] connections = {first, second};
+        for (int i = 0; i < 2; i++) {
+            GameEngine engine = new GameEngine(seed, new WeightedRandomizer(seed), width, height);
+            engine.start(now, seed);
+            sides[i] = new Side(i, connections[i], engine, now);
+            connections[i].join(this, i);
+        }
+        for (Side side : sides) {
+            begin(START);
+            putVarint(width);
+            putVarint(height);
+            side.connection.send(message, 0);
+        }
+        for (Side side : sides) {
+            sync(side, now);
+        }
+    }
+
+    // Garbage rows sent to the opponent for clearing lines at once
+    static int garbageFor(int lines) {
+        return GARBAGE_FOR_LINES[Math.min(lines, GARBAGE_FOR_LINES.length - 1)];
+    }
+
+    boolean isOver() {
+        return over;
+    }
+
+    // Applies an input from the player on the given side
+    void apply(int side, GameInput input, long now) {
+        if (over) {
+            return;
+        }
+        Side s = sides[side];
+        if (s.engine.apply(input, now)) {
+            sync(s, now);
+        }
+    }
+
+    // Runs gravity for both players
+    void tick(long now) {
+        for (Side s : sides) {
+            if (over) {
+                return;
+            }
+            if (now >= s.nextFall) {
+                s.nextFall = now + s.engine.getFallDelay();
+                if (s.engine.step(now)) {
+                    sync(s, now);
+                }
+            }
+        }
+    }
+
+    // The player on side left; the other one wins
+    void forfeit(int side) {
+        if (!over) {
+            finish(sides[1 - side]);
+        }
+    }
+
+    private void sync(Side s, long now) {
+        if (over) {
+            return;
+        }
+        GameEngine engine = s.engine;
+        Side opponent = sides[1 - s.index];
+
+        if (engine.getPiecesPlaced() != s.sentPieces) {
+            int lines = engine.getLinesCleared() - s.sentLines;
+            begin(LOCK);
+            putPiece(engine.getLastLockedPiece(), engine.getLastLockedX(), engine.getLastLockedY());
+            putVarint(lines);
+            broadcast(s);
+            s.sentPieces = engine.getPiecesPlaced();
+
+            int garbage = garbageFor(lines);
+            if (garbage > 0 && !opponent.engine.isGameOver()) {
+                int hole = holes.nextInt(opponent.engine.getWidth());
+                opponent.engine.addGarbage(garbage, hole, now);
+                begin(GARBAGE);
+                putVarint(garbage);
+                putVarint(hole);
+                broadcast(opponent);
+                sync(opponent, now);
+                if (over) {
+                    return;
+                }
+            }
+        }
+
+        Shape piece = engine.getCurrentPiece();
+        if (piece != s.sentPiece || engine.getCurrentX() != s.sentX || engine.getCurrentY() != s.sentY) {
+            begin(PIECE);
+            putPiece(piece, engine.getCurrentX(), engine.getCurrentY());
+            broadcast(s);
+            s.sentPiece = piece;
+            s.sentX = engine.getCurrentX();
+            s.sentY = engine.getCurrentY();
+        }
+
+        if (queueChanged(s)) {
+            begin(QUEUE);
+            message.put((byte) ordinal(engine.getHoldPiece()));
+            message.put((byte) (engine.canHold() ? 1 : 0));
+            for (int i = 0; i < GameEngine.NUM_NEXT_PIECES; i++) {
+                message.put((byte) engine.getNextPiece(i).getShape().ordinal());
+            }
+            broadcast(s);
+        }
+
+        if (engine.getScore() != s.sentScore || engine.getLevel() != s.sentLevel
+                || engine.getLinesCleared() != s.sentLines) {
+            begin(SCORE);
+            putVarint(engine.getScore());
+            putVarint(engine.getLevel());
+            putVarint(engine.getLinesCleared());
+            broadcast(s);
+            s.sentScore = engine.getScore();
+            s.sentLevel = engine.getLevel();
+            s.sentLines = engine.getLinesCleared();
+        }
+
+        if (engine.isGameOver() && !over) {
+            finish(opponent);
+        }
+    }
+
+    // Compares hold and the next pieces with what was sent, and remembers them
+    private static boolean queueChanged(Side s) {
+        GameEngine engine = s.engine;
+        boolean changed = false;
+        int hold = ordinal(engine.getHoldPiece());
+        if (hold != s.sentHold || engine.canHold() != s.sentCanHold) {
+            s.sentHold = hold;
+            s.sentCanHold = engine.canHold();
+            changed = true;
+        }
+        for (int i = 0; i < GameEngine.NUM_NEXT_PIECES; i++) {
+            Shape.Tetrominoes next = engine.getNextPiece(i).getShape();
+            if (next != s.sentNext[i]) {
+                s.sentNext[i] = next;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private void finish(Side winner) {
+        over = true;
+        for (Side s : sides) {
+            begin(GAME_OVER);
+            message.put((byte) (s == winner ? 1 : 0));
+            s.connection.send(message, 0);
+        }
+        server.matchOver(this, sides[0].connection, sides[1].connection);
+    }
+
+    // Sends the message to the side's own player and, flagged, to the opponent
+    private void broadcast(Side s) {
+        s.connection.send(message, 0);
+        sides[1 - s.index].connection.send(message, OPPONENT);
+    }
+
+    private void begin(int type) {
+        message.clear();
+        message.put((byte) type);
+    }
+
+    private void putPiece(Shape piece, int x, int y) {
+        message.put((byte) (piece.getShape().ordinal() << 2 | piece.getRotation()));
+        putVarint(x << 1 ^ x >> 31);
+        putVarint(y << 1 ^ y >> 31);
+    }
+
+    private void putVarint(int value) {
+        ReplayRecorder.putVarint(message, value & 0xFFFFFFFFL);
+    }
+
+    private static int ordinal(Shape piece) {
+        return piece == null ? 0 : piece.getShape().ordinal();
+    }
+
+    // One player's engine and what their client was last told about it
+    private static class Side {
+        final int index;
+        final VersusServer.Connection connection;
+        final GameEngine engine;
+        long nextFall;
+        int sentPieces = 0;
+        Shape sentPiece;
+        int sentX;
+        int sentY;
+        int sentHold = -1;
+        boolean sentCanHold;
+        final Shape.Tetrominoes[] sentNext = new Shape.Tetrominoes[GameEngine.NUM_NEXT_PIECES];
+        int sentScore = -1;
+        int sentLevel = -1;
+        int sentLines = 0;
+
+        Side(int index, VersusServer.Connection connection, GameEngine engine, long now) {
+            this.index = index;
+            this.connection = connection;
+            this.engine = engine;
+            this.nextFall = now + engine.getFallDelay();
+        }
+    }
+}
@@ -0,0 +1,350 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// Authoritative versus server. One thread runs a non-blocking NIO selector
+// for every connection plus the gravity of every match, so thousands of
+// matches cost one thread and a few kilobytes each: two engines and two small
+// output buffers that only grow while a client is slow to read.
+//
+// Each new connection waits for the next one and the two play a VersusMatch.
+// When the match ends, both players are queued for another one. Clients send
+// GameInput ordinals and receive the delta messages described in VersusMatch.
+// It listens on the loopback address unless --host names another one, such as
+// 0.0.0.0 for every interface.
+//
+// Usage: java VersusServer [--host H] [--port P] [--width W] [--height H]
+public class VersusServer implements Runnable, Closeable {
+    public static final int DEFAULT_PORT = 7420;
+    private static final int TICK_MILLIS = 5;
+    private static final int STATUS_INTERVAL = 10_000;
+    private static final int INPUT_BUFFER_SIZE = 32;
+    private static final int INITIAL_OUTPUT_SIZE = 256;
+    // A client this far behind on reading is dropped
+    private static final int MAX_OUTPUT_SIZE = 64 * 1024;
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final int width;
+    private final int height;
+    private final SeededRandom seeds = new SeededRandom(System.nanoTime());
+    private final ByteBuffer message = ByteBuffer.allocate(VersusMatch.MAX_MESSAGE_BYTES);
+    private final ByteBuffer input = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+    private final List<VersusMatch> matches = new ArrayList<>();
+    private final List<Connection> finished = new ArrayList<>();
+    private final List<Connection> unflushed = new ArrayList<>();
+    private final List<Connection> dropped = new ArrayList<>();
+    private Connection waiting;
+    private int connections = 0;
+    private long matchesPlayed = 0;
+    private volatile boolean running = true;
+
+    public VersusServer(InetSocketAddress address, int width, int height) throws IOException {
+        this.width = width;
+        this.height = height;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address, 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    // Matches in progress; only accurate when read on the server thread
+    public int getMatchCount() {
+        return matches.size();
+    }
+
+    ByteBuffer messageBuffer() {
+        return message;
+    }
+
+    @Override
+    public void run() {
+        long nextTick = System.currentTimeMillis();
+        long nextStatus = nextTick + STATUS_INTERVAL;
+        try {
+            while (running) {
+                selector.select(Math.max(1, nextTick - System.currentTimeMillis()));
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        read(connection);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.flush();
+                    }
+                    disconnectDropped();
+                }
+
+                long now = System.currentTimeMillis();
+                if (now >= nextTick) {
+                    for (int i = 0; i < matches.size(); i++) {
+                        matches.get(i).tick(now);
+                    }
+                    nextTick = now + TICK_MILLIS;
+                }
+                disconnectDropped();
+                removeFinishedMatches();
+                requeueFinishedPlayers();
+                flushAll();
+
+                if (now >= nextStatus) {
+                    System.out.printf("%d connections, %d matches in progress, %d played%n",
+                            connections, matches.size(), matchesPlayed);
+                    nextStatus = now + STATUS_INTERVAL;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Versus server failed: " + e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        server.close();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections++;
+            enqueue(connection);
+            disconnectDropped();
+        }
+    }
+
+    // Pairs the connection with the one waiting, or leaves it waiting
+    private void enqueue(Connection connection) {
+        if (!connection.channel.isOpen()) {
+            return;
+        }
+        if (waiting == null || !waiting.channel.isOpen()) {
+            waiting = connection;
+            return;
+        }
+        Connection opponent = waiting;
+        waiting = null;
+        matches.add(new VersusMatch(this, opponent, connection, seeds.nextLong(), width, height,
+                System.currentTimeMillis()));
+    }
+
+    private void read(Connection connection) {
+        input.clear();
+        int n;
+        try {
+            n = connection.channel.read(input);
+        } catch (IOException e) {
+            n = -1;
+        }
+        if (n < 0) {
+            disconnect(connection);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        GameInput[] inputs = GameInput.values();
+        for (int i = 0; i < n && !connection.dropping; i++) {
+            int code = input.get(i);
+            if (code < 0 || code >= inputs.length) {
+                disconnect(connection);
+                return;
+            }
+            if (connection.match != null) {
+                connection.match.apply(connection.side, inputs[code], now);
+            }
+        }
+    }
+
+    private void disconnect(Connection connection) {
+        if (!connection.channel.isOpen()) {
+            return;
+        }
+        connections--;
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // Already gone either way
+        }
+        if (waiting == connection) {
+            waiting = null;
+        }
+        if (connection.match != null) {
+            connection.match.forfeit(connection.side);
+        }
+    }
+
+    // Called by a match as it ends; the players are queued again once the
+    // current round of events has been handled
+    void matchOver(VersusMatch match, Connection first, Connection second) {
+        matchesPlayed++;
+        first.match = null;
+        second.match = null;
+        finished.add(first);
+        finished.add(second);
+    }
+
+    private void removeFinishedMatches() {
+        for (int i = matches.size() - 1; i >= 0; i--) {
+            if (matches.get(i).isOver()) {
+                // Order does not matter, so swap the last one in
+                matches.set(i, matches.get(matches.size() - 1));
+                matches.remove(matches.size() - 1);
+            }
+        }
+    }
+
+    private void requeueFinishedPlayers() {
+        for (int i = 0; i < finished.size(); i++) {
+            enqueue(finished.get(i));
+        }
+        finished.clear();
+        disconnectDropped();
+    }
+
+    // Disconnects the clients that fell too far behind while the last event
+    // was handled. Doing it then, rather than from inside send, keeps a
+    // forfeit from writing its GAME_OVER over a message still being sent.
+    private void disconnectDropped() {
+        for (int i = 0; i < dropped.size(); i++) {
+            disconnect(dropped.get(i));
+        }
+        dropped.clear();
+    }
+
+    private void flushAll() {
+        for (int i = 0; i < unflushed.size(); i++) {
+            unflushed.get(i).flush();
+        }
+        unflushed.clear();
+    }
+
+    // One client socket and the messages waiting to be written to it
+    class Connection {
+        final SocketChannel channel;
+        SelectionKey key;
+        VersusMatch match;
+        int side;
+        private ByteBuffer output = ByteBuffer.allocate(INITIAL_OUTPUT_SIZE);
+        private boolean queued = false;
+        private boolean dropping = false;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void join(VersusMatch match, int side) {
+            this.match = match;
+            this.side = side;
+        }
+
+        // Queues the message built in buffer, with flags or'ed into its type byte
+        void send(ByteBuffer buffer, int flags) {
+            if (!channel.isOpen() || dropping) {
+                return;
+            }
+            int length = buffer.position();
+            if (output.remaining() < length && !grow(length)) {
+                // Too far behind to catch up; dropping it forfeits the match
+                // once the current event has been handled
+                dropping = true;
+                dropped.add(this);
+                return;
+            }
+            int start = output.position();
+            output.put(buffer.array(), 0, length);
+            output.put(start, (byte) (output.get(start) | flags));
+            if (!queued) {
+                queued = true;
+                unflushed.add(this);
+            }
+        }
+
+        private boolean grow(int needed) {
+            int size = output.capacity();
+            while (size - output.position() < needed) {
+                size *= 2;
+            }
+            if (size > MAX_OUTPUT_SIZE) {
+                return false;
+            }
+            ByteBuffer larger = ByteBuffer.allocate(size);
+            output.flip();
+            larger.put(output);
+            output = larger;
+            return true;
+        }
+
+        void flush() {
+            queued = false;
+            if (!channel.isOpen()) {
+                return;
+            }
+            output.flip();
+            try {
+                channel.write(output);
+            } catch (IOException e) {
+                output.clear();
+                disconnect(this);
+                return;
+            }
+            output.compact();
+            if (output.position() > 0) {
+                // Finish when the socket can take more
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+                if (output.capacity() > INITIAL_OUTPUT_SIZE) {
+                    // Give back the memory a slow moment needed
+                    output = ByteBuffer.allocate(INITIAL_OUTPUT_SIZE);
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        InetAddress host = InetAddress.getLoopbackAddress();
+        int port = DEFAULT_PORT;
+        int width = GameEngine.BOARD_WIDTH;
+        int height = GameEngine.BOARD_HEIGHT;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--host" -> host = InetAddress.getByName(args[++i]);
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                case "--width" -> width = Integer.parseInt(args[++i]);
+                case "--height" -> height = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        VersusServer server = new VersusServer(new InetSocketAddress(host, port), width, height);
+        System.out.println("Versus server listening on " + host.getHostAddress() + " port " + server.getPort());
+        server.run();
+    }
+}
@@ -0,0 +1,60 @@
+// The original distribution: the I piece comes up 10% of the time and every
+// other piece 15%.
+public class WeightedRandomizer implements Randomizer {
+    private final SeededRandom random;
+
+    public WeightedRandomizer(long seed) {
+        random = new SeededRandom(seed);
+    }
+
+    @Override
+    public String name() {
+        return "weighted";
+    }
+
+    @Override
+    public void reset(long seed) {
+        random.setState(seed);
+    }
+
+    @Override
+    public long getRandomState() {
+        return random.getState();
+    }
+
+    // Every draw is independent, so the random state is all there is
+    @Override
+    public long getPackedState() {
+        return 0;
+    }
+
+    @Override
+    public void setState(long randomState, long packedState) {
+        random.setState(randomState);
+    }
+
+    @Override
+    public Shape.Tetrominoes next() {
+        int x = random.nextInt(140); // Increased range for weighted probabilities
+
+        // Weighted distribution:
+        // LineShape (I): 10% chance (x < 14)
+        // Other pieces: 15% chance each (x ranges of 21)
+
+        if (x < 14) {
+            return Shape.Tetrominoes.LineShape;      // 10% chance
+        } else if (x < 35) {
+            return Shape.Tetrominoes.ZShape;         // 15% chance
+        } else if (x < 56) {
+            return Shape.Tetrominoes.SShape;         // 15% chance
+        } else if (x < 77) {
+            return Shape.Tetrominoes.TShape;         // 15% chance
+        } else if (x < 98) {
+            return Shape.Tetrominoes.SquareShape;    // 15% chance
+        } else if (x < 119) {
+            return Shape.Tetrominoes.LShape;         // 15% chance
+        } else {
+            return Shape.Tetrominoes.MirroredLShape; // 15% chance
+        }
+    }
+}
@@ -0,0 +1,61 @@
+// Zobrist keys for hashing search positions. Keys come from a 64-bit mixing
+// function instead of a random table, so boards of any size can be hashed
+// without preallocating keys for every cell.
+//
+// Filled cells are hashed a row at a time: a row's key is its bitmask mixed
+// with a key for its row index, and a board's hash is the XOR of the keys of
+// its non-empty rows. Playfield keeps that hash up to date as it changes.
+// Locking a cell or moving a row in a line clear swaps the old key of each
+// row it touches for the new one, so the hash never needs a scan of the
+// board, and every row of a board of any height gets its own key.
+public final class Zobrist {
+    private static final long ROW_DOMAIN = 0x6A09E667F3BCC909L;
+    private static final long PIECE_DOMAIN = 0xBB67AE8584CAA73BL;
+    private static final long VALUE_DOMAIN = 0x3C6EF372FE94F82BL;
+    // Row index keys for common board heights; taller rows are mixed on use
+    private static final long[] ROW_KEYS = new long[256];
+
+    static {
+        for (int y = 0; y < ROW_KEYS.length; y++) {
+            ROW_KEYS[y] = mix(ROW_DOMAIN + y);
+        }
+    }
+
+    private Zobrist() {
+    }
+
+    // SplitMix64 finalizer
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Key of row y with the cells in mask filled; 0 for an empty row
+    public static long row(int y, long mask) {
+        if (mask == 0) {
+            return 0;
+        }
+        return mix(mask ^ (y < ROW_KEYS.length ? ROW_KEYS[y] : mix(ROW_DOMAIN + y)));
+    }
+
+    // Key for a piece in a numbered slot (current, hold, queue position...)
+    public static long piece(int slot, Shape.Tetrominoes shape) {
+        return mix(PIECE_DOMAIN + slot * 16L + shape.ordinal());
+    }
+
+    // Key for a small integer attribute such as search depth, in a numbered slot
+    public static long value(int slot, long value) {
+        return mix(VALUE_DOMAIN + ((long) slot << 40) + value);
+    }
+
+    // XOR of the keys of every non-empty row, computed from scratch. Playfield.getHash()
+    // returns the same value without the scan.
+    public static long hash(Playfield field) {
+        long hash = 0;
+        for (int y = 0; y < field.getStackHeight(); y++) {
+            hash ^= row(y, field.getRow(y));
+        }
+        return hash;
+    }
+}